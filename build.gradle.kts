@@ -13,10 +13,27 @@ dependencies {
     implementation("mysql:mysql-connector-java:8.0.33")
     testImplementation(platform("org.junit:junit-bom:5.10.0"))
     testImplementation("org.junit.jupiter:junit-jupiter")
+    testAnnotationProcessor(sourceSets.main.get().output)
     compileOnly("org.projectlombok:lombok:1.18.30")
     annotationProcessor("org.projectlombok:lombok:1.18.30")
 }
 
+sourceSets {
+    create("benchmark") {
+        compileClasspath += sourceSets.main.get().output + sourceSets.test.get().output
+        runtimeClasspath += sourceSets.main.get().output + sourceSets.test.get().output
+    }
+}
+
+configurations["benchmarkImplementation"].extendsFrom(configurations.testImplementation.get())
+
 tasks.test {
     useJUnitPlatform()
+}
+
+tasks.register<JavaExec>("benchmark") {
+    description = "Runs the hydration benchmark, outside of the test suite."
+    group = "verification"
+    classpath = sourceSets["benchmark"].runtimeClasspath
+    mainClass.set("fr.flylonyx.jdorm.library.core.HydrationBenchmark")
 }
\ No newline at end of file
@@ -0,0 +1,52 @@
+package fr.flylonyx.jdorm.library.core;
+
+import java.sql.ResultSet;
+
+/**
+ * Rows per second hydrated from a StubResultSet by the reflective loop QueryBuilder used to run, which created each
+ * instance with getDeclaredConstructor().newInstance() and filled each field with Field.set(rs.getObject(name)),
+ * and by EntityMetadata.hydrate(), which goes through cached method handles and reads columns by index.
+ * The stub costs the same to both, so the printed figures compare the hydration paths themselves.
+ * Run it with ./gradlew benchmark.
+ */
+public final class HydrationBenchmark {
+    private static final int ROWS = 20_000;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 20;
+
+    private HydrationBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        ResultSet rs = StubResultSet.of(WidePerson.COLUMNS, HydrationTest.rows(ROWS));
+        EntityMetadata<WidePerson> metadata = EntityMetadata.of(WidePerson.class);
+
+        double reflective = rowsPerSecond(() -> {
+            rs.beforeFirst();
+            return HydrationTest.reflectiveHydrate(rs).size();
+        });
+        double handles = rowsPerSecond(() -> {
+            rs.beforeFirst();
+            return HydrationTest.hydrate(metadata, rs).size();
+        });
+
+        System.out.printf("Hydration of %d-column rows: Field.set %.0f rows/s, method handles %.0f rows/s (x%.2f)%n",
+                WidePerson.COLUMNS.length, reflective, handles, handles / reflective);
+    }
+
+    private static double rowsPerSecond(Round round) throws Exception {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            round.run();
+        }
+        long rows = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            rows += round.run();
+        }
+        return rows * 1e9 / (System.nanoTime() - start);
+    }
+
+    private interface Round {
+        int run() throws Exception;
+    }
+}
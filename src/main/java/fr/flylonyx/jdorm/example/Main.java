@@ -6,50 +6,57 @@ import fr.flylonyx.jdorm.example.migrations.CreatePersonsTable;
 import fr.flylonyx.jdorm.example.migrations.ModifySalaryColumnInPersons;
 import fr.flylonyx.jdorm.example.models.Address;
 import fr.flylonyx.jdorm.example.models.Person;
+import fr.flylonyx.jdorm.library.core.CompiledQuery;
 import fr.flylonyx.jdorm.library.core.MigrationManager;
 import fr.flylonyx.jdorm.library.core.Schema;
 import fr.flylonyx.jdorm.library.database.Connection;
 import fr.flylonyx.jdorm.library.utils.Operations;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class Main {
     public static void main(String[] args) throws Exception {
 
         Connection.configure("jdbc:mysql://", "localhost", "my_database", "my_user", "my_password");
-        java.sql.Connection connection = Connection.getConnection();
-        Schema schema = new Schema(connection);
+        Connection.setProperty("useServerPrepStmts", "true");
+        Connection.configurePool(2, 10, Duration.ofSeconds(30), Duration.ofMinutes(10), Duration.ofMinutes(30), Duration.ofSeconds(60));
+        try (java.sql.Connection connection = Connection.getConnection()) {
+            Schema schema = new Schema(connection);
 
-        MigrationManager.initialize();
+            MigrationManager.initialize();
 
-        MigrationManager.applyMigration("CreatePersonsTable", () -> {
-            try {
-                CreatePersonsTable.up(schema);
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
-        });
-        MigrationManager.applyMigration("AddPhoneNumberToPersons", () -> {
-            try {
-                AddPhoneNumberToPersons.up(schema);
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
-        });
-        MigrationManager.applyMigration("CreateAddressesTable", () -> {
-            try {
-                CreateAddressesTable.up(schema);
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
-        });
-        MigrationManager.applyMigration("ModifySalaryColumnInPersons", () -> {
-            try {
-                ModifySalaryColumnInPersons.up(schema);
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
-        });
+            MigrationManager.applyMigration("CreatePersonsTable", () -> {
+                try {
+                    CreatePersonsTable.up(schema);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            MigrationManager.applyMigration("AddPhoneNumberToPersons", () -> {
+                try {
+                    AddPhoneNumberToPersons.up(schema);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            MigrationManager.applyMigration("CreateAddressesTable", () -> {
+                try {
+                    CreateAddressesTable.up(schema);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            MigrationManager.applyMigration("ModifySalaryColumnInPersons", () -> {
+                try {
+                    ModifySalaryColumnInPersons.up(schema);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
 
         // Creating a person
         Person person1 = new Person();
@@ -114,12 +121,89 @@ public class Main {
                 .execute();
         System.out.println("Active Persons: " + activePersons);
 
+        // Retrieving all active persons with their addresses, in two queries
+        List<Person> activePersonsWithAddresses = Person.query(Person.class)
+                .where("is_active", Operations.EQUALS, true)
+                .with("addresses")
+                .execute();
+        activePersonsWithAddresses.forEach(person -> System.out.println(person.getFirstName() + ": " + person.getAddresses()));
+
+        // Retrieving all active persons with their addresses, in a single joined query
+        List<Person> joinedPersons = Person.query(Person.class)
+                .fetchJoin("addresses")
+                .where("persons.is_active", Operations.EQUALS, true)
+                .execute();
+        joinedPersons.forEach(person -> System.out.println(person.getFirstName() + ": " + person.getAddresses()));
+
         // Retrieving a person by their email
         Person personByEmail = Person.query(Person.class)
                 .where("email", Operations.EQUALS, "john.doe@example.com")
                 .first();
         System.out.println("Person by Email: " + personByEmail);
 
+        // Compiling a query once and executing it with new parameters
+        CompiledQuery<Person> personsByEmail = Person.query(Person.class)
+                .where("email", Operations.EQUALS, null)
+                .limit(1)
+                .compile();
+        System.out.println("Compiled Person by Email: " + personsByEmail.first("jane.smith@example.com"));
+        System.out.println("Statement cache: " + Connection.statementCacheStats());
+        System.out.println("Connection pool: " + Connection.poolStats());
+
+        // Running independent queries in parallel
+        CompletableFuture<List<Person>> activeAsync = Person.query(Person.class)
+                .where("is_active", Operations.EQUALS, true)
+                .executeAsync();
+        CompletableFuture<Long> countAsync = Person.query(Person.class).countAsync();
+        System.out.println("Active persons (async): " + activeAsync.join().size() + " of " + countAsync.join());
+
+        // Saving several persons in one transaction, sent as a single JDBC batch at commit
+        Connection.inTransaction(() -> {
+            for (int i = 0; i < 3; i++) {
+                Person intern = new Person();
+                intern.setFirstName("Intern");
+                intern.setLastName("#" + i);
+                intern.setEmail("intern" + i + "@example.com");
+                intern.setAge(20);
+                intern.setActive(true);
+                intern.setSalary(20000.00);
+                intern.setBirthDate("2005-01-01");
+                intern.setCreatedAt("2024-06-01 09:00:00");
+                intern.save();
+            }
+        });
+
+        // Retrieving a person by their email, caching the result for five minutes
+        Person cachedPersonByEmail = Person.query(Person.class)
+                .where("email", Operations.EQUALS, "john.doe@example.com")
+                .cached(Duration.ofMinutes(5))
+                .first();
+        System.out.println("Cached Person by Email: " + cachedPersonByEmail);
+
+        // Retrieving only the names of active persons
+        List<Person> activePersonNames = Person.query(Person.class)
+                .select("id", "first_name", "last_name")
+                .where("is_active", Operations.EQUALS, true)
+                .execute();
+        System.out.println("Active Person Names: " + activePersonNames);
+
+        // Counting and aggregating active persons without fetching them
+        long activeCount = Person.query(Person.class)
+                .where("is_active", Operations.EQUALS, true)
+                .count();
+        Number averageSalary = Person.query(Person.class)
+                .where("is_active", Operations.EQUALS, true)
+                .avg("salary");
+        Map<Integer, Number> personsByAge = Person.query(Person.class)
+                .groupBy("age")
+                .countByGroup();
+        System.out.println("Active Persons: " + activeCount + ", average salary: " + averageSalary + ", by age: " + personsByAge);
+
+        // Streaming every person without loading the whole table in memory
+        Person.query(Person.class)
+                .orderBy("id")
+                .forEach(person -> System.out.println("Streamed Person: " + person));
+
         // Retrieving persons with a salary greater than 50000
         List<Person> highSalaryPersons = Person.query(Person.class)
                 .where("salary", Operations.EQUALS, 50000)
@@ -162,6 +246,14 @@ public class Main {
                 .execute();
         System.out.println("Offset Persons: " + offsetPersons);
 
+        // Paging through active persons by id, without OFFSET scans
+        for (List<Person> page : Person.query(Person.class)
+                .where("is_active", Operations.EQUALS, true)
+                .paginateBy("id")
+                .pageSize(1000)) {
+            System.out.println("Page of Persons: " + page);
+        }
+
         // Retrieving the addresses of a specific person
         List<Address> personAddresses = Address.query(Address.class)
                 .where("person_id", Operations.EQUALS, person1.getId())
@@ -200,18 +292,16 @@ public class Main {
         System.out.println("Addresses with HAVING Condition: " + addressesHavingCondition);
 
         // Deleting all persons that meet a certain criteria (e.g., age greater than 30)
-        Person.query(Person.class)
-                .execute()
-                .stream()
-                .filter(p -> p.getAge() > 30)
-                .forEach(p -> {
-                    try {
-                        p.delete();
-                        System.out.println("Deleted person: " + p.getFirstName() + " " + p.getLastName());
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                });
+        int deletedPersons = Person.query(Person.class)
+                .where("age", Operations.GREATER_THAN, 30)
+                .delete();
+        System.out.println("Deleted persons: " + deletedPersons);
+
+        // Raising the salary of all active persons
+        int raisedPersons = Person.query(Person.class)
+                .where("is_active", Operations.EQUALS, true)
+                .increment("salary", 1000);
+        System.out.println("Raised persons: " + raisedPersons);
 
     }
 }
\ No newline at end of file
@@ -1,14 +1,12 @@
 package fr.flylonyx.jdorm.example.models;
 
+import fr.flylonyx.jdorm.library.annotations.BelongsTo;
 import fr.flylonyx.jdorm.library.annotations.Column;
 import fr.flylonyx.jdorm.library.annotations.Table;
 import fr.flylonyx.jdorm.library.core.Model;
 import lombok.Getter;
 import lombok.Setter;
 
-import java.lang.reflect.InvocationTargetException;
-import java.sql.SQLException;
-
 @Table(name = "addresses")
 @Getter
 @Setter
@@ -25,7 +23,10 @@ public class Address extends Model {
     @Column(name = "person_id")
     private int personId;
 
-    public Person getPerson() throws SQLException, InvocationTargetException, NoSuchMethodException, IllegalAccessException, InstantiationException {
-            return Person.findById(personId, Person.class);
+    @BelongsTo(foreignKey = "person_id")
+    private Person person;
+
+    public Person getPerson() {
+        return relation("person");
     }
 }
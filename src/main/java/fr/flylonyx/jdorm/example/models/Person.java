@@ -1,9 +1,9 @@
 package fr.flylonyx.jdorm.example.models;
 
 import fr.flylonyx.jdorm.library.annotations.Column;
+import fr.flylonyx.jdorm.library.annotations.HasMany;
 import fr.flylonyx.jdorm.library.annotations.Table;
 import fr.flylonyx.jdorm.library.core.Model;
-import fr.flylonyx.jdorm.library.utils.Operations;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -40,13 +40,10 @@ public class Person extends Model {
     @Column(name = "created_at")
     private String createdAt;
 
+    @HasMany(foreignKey = "person_id")
+    private List<Address> addresses;
+
     public List<Address> getAddresses() {
-        try {
-            return Address.query(Address.class)
-                    .where("person_id", Operations.EQUALS, id)
-                    .execute();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        return relation("addresses");
     }
 }
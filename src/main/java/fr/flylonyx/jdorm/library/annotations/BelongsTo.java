@@ -0,0 +1,21 @@
+package fr.flylonyx.jdorm.library.annotations;
+
+import java.lang.annotation.*;
+
+/**
+ * Annotation declaring the inverse side of a relation on a field of a class annotated with @Table,
+ * whose own table holds the foreign key.
+ * The foreignKey attribute names the column of this model referencing the related table,
+ * and the ownerKey attribute the column of the related table it references, the id by default.
+ * The relation can be loaded for a whole result set with QueryBuilder.with(), or lazily on first access,
+ * in which case it is loaded at once for the next batchSize models of the same result set.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface BelongsTo {
+    String foreignKey();
+
+    String ownerKey() default "id";
+
+    int batchSize() default 50;
+}
@@ -0,0 +1,16 @@
+package fr.flylonyx.jdorm.library.annotations;
+
+import java.lang.annotation.*;
+
+/**
+ * Annotation enabling the second-level cache of findById for a class annotated with @Table.
+ * The maxSize attribute bounds the number of cached rows, evicting the least recently used ones,
+ * and the expireAfterSeconds attribute sets their time to live, 0 meaning they never expire.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Cacheable {
+    int maxSize() default 1000;
+
+    long expireAfterSeconds() default 0;
+}
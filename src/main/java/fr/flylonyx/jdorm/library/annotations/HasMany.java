@@ -0,0 +1,20 @@
+package fr.flylonyx.jdorm.library.annotations;
+
+import java.lang.annotation.*;
+
+/**
+ * Annotation declaring a one-to-many relation on a List field of a class annotated with @Table.
+ * The foreignKey attribute names the column of the related table referencing this model,
+ * and the localKey attribute the column of this model it references, the id by default.
+ * The relation can be loaded for a whole result set with QueryBuilder.with(), or lazily on first access,
+ * in which case it is loaded at once for the next batchSize models of the same result set.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface HasMany {
+    String foreignKey();
+
+    String localKey() default "id";
+
+    int batchSize() default 50;
+}
@@ -0,0 +1,21 @@
+package fr.flylonyx.jdorm.library.annotations;
+
+import java.lang.annotation.*;
+
+/**
+ * Annotation declaring a one-to-one relation on a field of a class annotated with @Table,
+ * whose related table holds the foreign key.
+ * The foreignKey attribute names the column of the related table referencing this model,
+ * and the localKey attribute the column of this model it references, the id by default.
+ * The relation can be loaded for a whole result set with QueryBuilder.with(), or lazily on first access,
+ * in which case it is loaded at once for the next batchSize models of the same result set.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface HasOne {
+    String foreignKey();
+
+    String localKey() default "id";
+
+    int batchSize() default 50;
+}
@@ -1,12 +1,23 @@
 package fr.flylonyx.jdorm.library.annotations;
 
+import fr.flylonyx.jdorm.library.utils.ShardStrategy;
+
 import java.lang.annotation.*;
 
 /**
  * Annotation to declare a table name for a class representation in a database.
+ * The shardKey attribute names the column whose value picks the shard of each row once shards are configured
+ * with Connection.configureShards(), with the given strategy; an empty key, the default, keeps the table
+ * on the primary database.
  */
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.TYPE)
 public @interface Table {
     String name();
+
+    String shardKey() default "";
+
+    ShardStrategy shardStrategy() default ShardStrategy.HASH;
+
+    long[] shardRanges() default {};
 }
@@ -0,0 +1,236 @@
+package fr.flylonyx.jdorm.library.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Thread-safe cache bounded in size or in total weight, evicting the least recently used entries when full,
+ * with an optional time to live and hit, miss and eviction counters.
+ * Every invalidation advances a generation number, which lets a reader that loaded a value from the
+ * database skip caching it if a write happened in the meantime.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the cached values
+ */
+public class LruCache<K, V> {
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final long ttlNanos;
+    private long weight;
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a cache holding at most the given number of entries.
+     *
+     * @param maxSize           the maximum number of entries
+     * @param expireAfterMillis the time to live of an entry in milliseconds, 0 for no expiry
+     */
+    public LruCache(int maxSize, long expireAfterMillis) {
+        this(maxSize, value -> 1, expireAfterMillis);
+    }
+
+    /**
+     * Creates a cache whose entries weigh at most the given total weight.
+     *
+     * @param maxWeight         the maximum total weight of the entries
+     * @param weigher           the function computing the weight of a value, called once when it is cached
+     * @param expireAfterMillis the default time to live of an entry in milliseconds, 0 for no expiry
+     */
+    public LruCache(long maxWeight, ToLongFunction<V> weigher, long expireAfterMillis) {
+        if (maxWeight < 1) throw new IllegalArgumentException("Cache size must be positive");
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(expireAfterMillis);
+    }
+
+    /**
+     * Returns the value cached for the given key and marks it as recently used.
+     *
+     * @param key the key to look up
+     * @return the cached value, or null if absent or expired
+     */
+    public V get(K key) {
+        return get(key, value -> true);
+    }
+
+    /**
+     * Returns the value cached for the given key if it is still valid, and marks it as recently used.
+     * Values rejected by the validity check are removed and counted as misses.
+     *
+     * @param key   the key to look up
+     * @param valid the check a cached value must pass to be returned
+     * @return the cached value, or null if absent, expired or invalid
+     */
+    public V get(K key, Predicate<V> valid) {
+        lock.lock();
+        try {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && entry.isExpired(System.nanoTime())) {
+                remove(key);
+                evictions.increment();
+                entry = null;
+            } else if (entry != null && !valid.test(entry.value)) {
+                remove(key);
+                entry = null;
+            }
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Caches a value, evicting the least recently used entries if the cache is full.
+     *
+     * @param key   the key of the value
+     * @param value the value to cache
+     */
+    public void put(K key, V value) {
+        storeLocked(key, value, ttlNanos);
+    }
+
+    /**
+     * Caches a value with its own time to live, evicting the least recently used entries if the cache is full.
+     * Values heavier than the whole cache are not cached.
+     *
+     * @param key               the key of the value
+     * @param value             the value to cache
+     * @param expireAfterMillis the time to live of the entry in milliseconds, 0 for no expiry
+     */
+    public void put(K key, V value, long expireAfterMillis) {
+        storeLocked(key, value, TimeUnit.MILLISECONDS.toNanos(expireAfterMillis));
+    }
+
+    private void storeLocked(K key, V value, long ttl) {
+        lock.lock();
+        try {
+            store(key, value, ttl);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Caches a value only if no invalidation happened since the given generation was read.
+     *
+     * @param key        the key of the value
+     * @param value      the value to cache
+     * @param generation the generation read before the value was loaded
+     * @return true if the value was cached
+     */
+    public boolean putIfGeneration(K key, V value, long generation) {
+        lock.lock();
+        try {
+            if (this.generation.get() != generation) return false;
+            store(key, value, ttlNanos);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the current generation, to pass to putIfGeneration once the value is loaded
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Removes the value cached for the given key.
+     *
+     * @param key the key to remove
+     */
+    public void invalidate(K key) {
+        lock.lock();
+        try {
+            generation.incrementAndGet();
+            remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes every cached value.
+     */
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            generation.incrementAndGet();
+            entries.clear();
+            weight = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return a snapshot of the counters and size of the cache
+     */
+    public CacheStats stats() {
+        lock.lock();
+        try {
+            return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), entries.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void store(K key, V value, long ttl) {
+        long valueWeight = weigher.applyAsLong(value);
+        if (valueWeight > maxWeight) {
+            remove(key);
+            return;
+        }
+
+        Entry<V> previous = entries.put(key, new Entry<>(value, valueWeight, ttl == 0 ? 0 : System.nanoTime() + ttl));
+        if (previous != null) weight -= previous.weight;
+        weight += valueWeight;
+
+        Iterator<Map.Entry<K, Entry<V>>> eldest = entries.entrySet().iterator();
+        while (weight > maxWeight && eldest.hasNext()) {
+            weight -= eldest.next().getValue().weight;
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private void remove(K key) {
+        Entry<V> removed = entries.remove(key);
+        if (removed != null) weight -= removed.weight;
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long weight;
+        private final long expiresAt;
+
+        private Entry(V value, long weight, long expiresAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return expiresAt != 0 && now - expiresAt >= 0;
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package fr.flylonyx.jdorm.library.core;
+
+import fr.flylonyx.jdorm.library.database.Connection;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Immutable, rendered form of a QueryBuilder query, created by QueryBuilder.compile().
+ * The SQL is rendered once when the query is compiled; executing it only binds parameters and hydrates rows,
+ * so a compiled query can be kept in a static field and executed concurrently from any thread,
+ * with the values given to the builder or with new values bound to the same placeholders.
+ * On a sharded table, each execution runs on the shards of the bound shard key values, or on every shard
+ * in parallel, as routed by its ShardPlan.
+ *
+ * @param <T> the model type returned by the query
+ */
+public final class CompiledQuery<T extends Model> {
+    private final EntityMetadata<T> metadata;
+    private final String sql;
+    private final List<Object> parameters;
+    private final int parameterCount;
+    private final List<String> tables;
+    private final Duration cacheTtl;
+    private final List<RelationMapping> eagerRelations;
+    private final List<RelationMapping> fetchJoins;
+    private final List<EntityMetadata<? extends Model>> fetchJoinMetadata;
+    private final ShardPlan<T> shardPlan;
+
+    CompiledQuery(EntityMetadata<T> metadata, String sql, List<Object> parameters, int parameterCount, List<String> tables,
+                  Duration cacheTtl, List<RelationMapping> eagerRelations,
+                  List<RelationMapping> fetchJoins, List<EntityMetadata<? extends Model>> fetchJoinMetadata,
+                  ShardPlan<T> shardPlan) {
+        this.metadata = metadata;
+        this.sql = sql;
+        this.parameters = Collections.unmodifiableList(new ArrayList<>(parameters));
+        this.parameterCount = parameterCount;
+        this.tables = Collections.unmodifiableList(new ArrayList<>(tables));
+        this.cacheTtl = cacheTtl;
+        this.eagerRelations = Collections.unmodifiableList(new ArrayList<>(eagerRelations));
+        this.fetchJoins = Collections.unmodifiableList(new ArrayList<>(fetchJoins));
+        this.fetchJoinMetadata = Collections.unmodifiableList(new ArrayList<>(fetchJoinMetadata));
+        this.shardPlan = shardPlan;
+    }
+
+    /**
+     * @return the rendered SQL of the query
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * @return the number of placeholders of the query, in the order of its WHERE then HAVING conditions
+     */
+    public int getParameterCount() {
+        return parameterCount;
+    }
+
+    /**
+     * @return the values given to the builder, bound when the query is executed without values
+     */
+    List<Object> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Executes the query with the values given to the builder.
+     *
+     * @return List of objects of type T from the query result set.
+     * @throws Exception if an error occurs during query execution or object instantiation.
+     * @throws IllegalStateException if the query was compiled without values for all its placeholders
+     */
+    public List<T> execute() throws Exception {
+        if (parameters.size() != parameterCount) {
+            throw new IllegalStateException("The query has " + parameterCount + " placeholders, execute it with their values");
+        }
+        return run(parameters);
+    }
+
+    /**
+     * Executes the query with new values bound to its placeholders, in the order of its WHERE then HAVING
+     * conditions; a whereIn() or whereBetween() condition takes one value per placeholder.
+     *
+     * @param values the values to bind, one per placeholder
+     * @return List of objects of type T from the query result set.
+     * @throws Exception if an error occurs during query execution or object instantiation.
+     * @throws IllegalArgumentException if the number of values does not match the number of placeholders
+     */
+    public List<T> execute(Object... values) throws Exception {
+        if (values.length != parameterCount) {
+            throw new IllegalArgumentException("The query has " + parameterCount + " placeholders, " + values.length + " values given");
+        }
+        return run(Arrays.asList(values));
+    }
+
+    /**
+     * Executes the query with the values given to the builder and returns its first result.
+     * Compile the query after limit(1) to fetch a single row.
+     *
+     * @return the first element from the query result or null if the result is empty
+     * @throws Exception if an error occurs during query execution
+     */
+    public T first() throws Exception {
+        List<T> results = execute();
+        return results.isEmpty() ? null : results.get(0);
+    }
+
+    /**
+     * Executes the query with new values bound to its placeholders and returns its first result.
+     * Compile the query after limit(1) to fetch a single row.
+     *
+     * @param values the values to bind, one per placeholder
+     * @return the first element from the query result or null if the result is empty
+     * @throws Exception if an error occurs during query execution
+     */
+    public T first(Object... values) throws Exception {
+        List<T> results = execute(values);
+        return results.isEmpty() ? null : results.get(0);
+    }
+
+    /**
+     * Same as execute(), run asynchronously by Connection.supplyAsync().
+     *
+     * @return a future of the list of objects of type T from the query result set
+     */
+    public CompletableFuture<List<T>> executeAsync() {
+        return Connection.supplyAsync(this::execute);
+    }
+
+    /**
+     * Same as execute(Object...), run asynchronously by Connection.supplyAsync().
+     *
+     * @param values the values to bind, one per placeholder
+     * @return a future of the list of objects of type T from the query result set
+     */
+    public CompletableFuture<List<T>> executeAsync(Object... values) {
+        Object[] bound = values.clone();
+        return Connection.supplyAsync(() -> execute(bound));
+    }
+
+    /**
+     * Same as first(), run asynchronously by Connection.supplyAsync().
+     *
+     * @return a future of the first element from the query result or null if the result is empty
+     */
+    public CompletableFuture<T> firstAsync() {
+        return Connection.supplyAsync(this::first);
+    }
+
+    /**
+     * Same as first(Object...), run asynchronously by Connection.supplyAsync().
+     *
+     * @param values the values to bind, one per placeholder
+     * @return a future of the first element from the query result or null if the result is empty
+     */
+    public CompletableFuture<T> firstAsync(Object... values) {
+        Object[] bound = values.clone();
+        return Connection.supplyAsync(() -> first(bound));
+    }
+
+    /**
+     * Runs the query, through the QueryCache if the query is cached, then loads the requested relations.
+     *
+     * @param values the values bound to the placeholders
+     * @return List of objects of type T from the query result set.
+     * @throws Exception if an error occurs during query execution or object instantiation.
+     */
+    private List<T> run(List<Object> values) throws Exception {
+        if (!fetchJoins.isEmpty()) return loadRelations(route(values, this::fetchJoined));
+        if (cacheTtl == null) return loadRelations(route(values, this::fetch));
+
+        List<Object[]> cachedRows = QueryCache.get(sql, values);
+        if (cachedRows != null) {
+            List<T> results = new ArrayList<>(cachedRows.size());
+            for (Object[] row : cachedRows) {
+                results.add(metadata.fromSnapshot(row));
+            }
+            return loadRelations(results);
+        }
+
+        long[] versions = QueryCache.versions(tables);
+        List<T> results = route(values, this::fetch);
+        List<Object[]> rows = new ArrayList<>(results.size());
+        for (T result : results) {
+            rows.add(result.getSnapshot());
+        }
+        QueryCache.put(sql, values, tables, versions, rows, cacheTtl);
+        return loadRelations(results);
+    }
+
+    /**
+     * Runs the query on the pool of the current thread, on the single shard holding its rows,
+     * or on every shard it is routed to in parallel, merging the rows of the shards.
+     *
+     * @param values  the values bound to the placeholders
+     * @param fetcher runs the query on the current pool
+     * @return List of objects of type T from the query result set.
+     * @throws Exception if an error occurs during query execution or object instantiation.
+     */
+    private List<T> route(List<Object> values, Fetcher<T> fetcher) throws Exception {
+        int[] shards = shardPlan == null ? null : shardPlan.route(values);
+        if (shards == null) return fetcher.fetch(sql, values);
+        if (shards.length == 1) return Connection.onShard(shards[0], () -> fetcher.fetch(sql, values));
+        return shardPlan.merge(Connection.onShards(shards, () -> fetcher.fetch(shardPlan.getScatterSql(), values)));
+    }
+
+    private interface Fetcher<T> {
+        List<T> fetch(String sql, List<Object> values) throws Exception;
+    }
+
+    /**
+     * Runs the query against the database and maps every row to an object of type T.
+     *
+     * @param query  the SQL of the query
+     * @param values the values bound to the placeholders
+     * @return List of objects of type T from the query result set.
+     * @throws Exception if an error occurs during query execution or object instantiation.
+     */
+    private List<T> fetch(String query, List<Object> values) throws Exception {
+        List<T> results = new ArrayList<>();
+        try (PreparedStatement stmt = Connection.prepareRead(query)) {
+            QueryBuilder.bind(stmt, values);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                int[] indexes = metadata.columnIndexes(rs);
+                while (rs.next()) {
+                    results.add(metadata.hydrate(rs, indexes));
+                }
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Runs the query with its fetch joins and hydrates the models and their related models from each row.
+     * Rows are merged on the id of the model, and related models on their own id, so that a model or a
+     * related model repeated over several rows is hydrated once.
+     *
+     * @param query  the SQL of the query
+     * @param values the values bound to the placeholders
+     * @return the distinct models of the result, in the order of their first row, with their relations assigned
+     * @throws Exception if an error occurs during query execution or object instantiation.
+     */
+    private List<T> fetchJoined(String query, List<Object> values) throws Exception {
+        Map<Object, T> roots = new LinkedHashMap<>();
+        Map<Object, List<Map<Object, Model>>> graph = new HashMap<>();
+        try (PreparedStatement stmt = Connection.prepareRead(query)) {
+            QueryBuilder.bind(stmt, values);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                int[] rootIndexes = metadata.columnIndexes(rs, QueryBuilder.joinPrefix(0));
+                int rootId = rootIndexes[metadata.getIdIndex()];
+                int[][] joinIndexes = new int[fetchJoins.size()][];
+                List<Map<Object, Model>> hydrated = new ArrayList<>(fetchJoins.size());
+                for (int j = 0; j < joinIndexes.length; j++) {
+                    joinIndexes[j] = fetchJoinMetadata.get(j).columnIndexes(rs, QueryBuilder.joinPrefix(j + 1));
+                    hydrated.add(new HashMap<>());
+                }
+
+                while (rs.next()) {
+                    Object rootKey = EntityMetadata.cacheKey(rs.getObject(rootId));
+                    List<Map<Object, Model>> related = graph.get(rootKey);
+                    if (related == null) {
+                        roots.put(rootKey, metadata.hydrate(rs, rootIndexes));
+                        related = new ArrayList<>(joinIndexes.length);
+                        for (int j = 0; j < joinIndexes.length; j++) {
+                            related.add(new LinkedHashMap<>());
+                        }
+                        graph.put(rootKey, related);
+                    }
+
+                    for (int j = 0; j < joinIndexes.length; j++) {
+                        EntityMetadata<? extends Model> joined = fetchJoinMetadata.get(j);
+                        Object id = rs.getObject(joinIndexes[j][joined.getIdIndex()]);
+                        if (id == null) continue;
+
+                        Object key = EntityMetadata.cacheKey(id);
+                        Model model = hydrated.get(j).get(key);
+                        if (model == null) {
+                            model = joined.hydrate(rs, joinIndexes[j]);
+                            hydrated.get(j).put(key, model);
+                        }
+                        related.get(j).putIfAbsent(key, model);
+                    }
+                }
+            }
+        }
+
+        for (Map.Entry<Object, T> root : roots.entrySet()) {
+            List<Map<Object, Model>> related = graph.get(root.getKey());
+            for (int j = 0; j < fetchJoins.size(); j++) {
+                fetchJoins.get(j).assign(root.getValue(), new ArrayList<>(related.get(j).values()));
+            }
+        }
+        return new ArrayList<>(roots.values());
+    }
+
+    /**
+     * Loads the relations requested with with() for the given results, and links the results together
+     * so that the other relations are lazily loaded by batches of models.
+     *
+     * @param results the models returned by the query
+     * @return the given results
+     * @throws Exception if an error occurs during query execution or object instantiation.
+     */
+    private List<T> loadRelations(List<T> results) throws Exception {
+        if (!metadata.hasRelations()) return results;
+        SiblingGroup.attach(results);
+        for (RelationMapping relation : eagerRelations) {
+            relation.load(metadata, results);
+        }
+        return results;
+    }
+}
@@ -0,0 +1,81 @@
+package fr.flylonyx.jdorm.library.core;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Reflection-free mapping between a model class and its table.
+ * Implementations are generated at compile time by the JDORM annotation processor as a class named
+ * after the model with a "Mapper" suffix in the same package (e.g. PersonMapper for Person).
+ * When such a class is present, Model and QueryBuilder use it instead of reflective field access.
+ *
+ * @param <T> the model type handled by the mapper
+ */
+public interface EntityMapper<T> {
+
+    /**
+     * @return the name of the table declared by the model's @Table annotation
+     */
+    String getTableName();
+
+    /**
+     * @return the INSERT statement binding every @Column field in declaration order
+     */
+    String getInsertSql();
+
+    /**
+     * @return the UPDATE statement setting every @Column field, filtered on the id column, or null if the model has no id
+     */
+    String getUpdateSql();
+
+    /**
+     * @return the DELETE statement filtered on the id column, or null if the model has no id
+     */
+    String getDeleteSql();
+
+    /**
+     * @return the SELECT statement filtered on the id column, or null if the model has no id
+     */
+    String getSelectByIdSql();
+
+    /**
+     * Creates a model instance from the current row of the given result set.
+     *
+     * @param rs the result set positioned on the row to read
+     * @param columnIndexes the index in the result set of each @Column field, in declaration order,
+     *                      or 0 for fields whose column is not part of the result
+     * @return the hydrated model instance
+     * @throws SQLException if a column cannot be read
+     */
+    T read(ResultSet rs, int[] columnIndexes) throws SQLException;
+
+    /**
+     * Binds every @Column field of the entity, in declaration order, starting at the given parameter index.
+     *
+     * @param stmt the statement to bind
+     * @param entity the entity providing the values
+     * @param index the index of the first parameter to bind
+     * @return the index of the next unbound parameter
+     * @throws SQLException if a parameter cannot be bound
+     */
+    int bind(PreparedStatement stmt, T entity, int index) throws SQLException;
+
+    /**
+     * Binds the id of the entity at the given parameter index.
+     *
+     * @param stmt the statement to bind
+     * @param entity the entity providing the id
+     * @param index the index of the parameter to bind
+     * @throws SQLException if the parameter cannot be bound or the model has no id
+     */
+    void bindId(PreparedStatement stmt, T entity, int index) throws SQLException;
+
+    /**
+     * Writes a key generated by the database back into the id field of the entity.
+     *
+     * @param entity the entity that was inserted
+     * @param id the generated key
+     */
+    void setGeneratedId(T entity, int id);
+}
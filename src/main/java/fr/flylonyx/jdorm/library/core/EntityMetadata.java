@@ -0,0 +1,885 @@
+package fr.flylonyx.jdorm.library.core;
+
+import fr.flylonyx.jdorm.library.annotations.Cacheable;
+import fr.flylonyx.jdorm.library.annotations.Column;
+import fr.flylonyx.jdorm.library.annotations.Table;
+import fr.flylonyx.jdorm.library.cache.LruCache;
+import fr.flylonyx.jdorm.library.database.Connection;
+import fr.flylonyx.jdorm.library.utils.ShardStrategy;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Mapping information of a class annotated with @Table, resolved once and shared by the whole core package.
+ * Holds the table name, the @Column fields in declaration order, the id field, the relation fields and the pre-rendered
+ * INSERT, UPDATE, DELETE and SELECT-by-id statements of the model.
+ * Fields and the constructor are accessed through method handles resolved once per column and adapted to a fixed,
+ * erased type, so the hydration loop calls them with invokeExact instead of going through the checks of Field.set.
+ * The handles are held by the metadata of each class rather than by static final fields, so the JIT cannot
+ * constant-fold them as it does hand-written field access: that is what the EntityMapper generated by the annotation
+ * processor provides, and when it is present, reading and binding go through it instead.
+ * Models annotated with @Cacheable also get a second-level cache of their rows, keyed by id,
+ * and models whose @Table declares a shard key get the strategy locating the shard of each row.
+ *
+ * @param <T> the model type described by this metadata
+ */
+final class EntityMetadata<T> {
+    private static final Map<Class<?>, EntityMetadata<?>> REGISTRY = new ConcurrentHashMap<>();
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final Class<T> type;
+    private final String tableName;
+    private final List<ColumnMapping> columns;
+    private final ColumnMapping idColumn;
+    private final int idIndex;
+    private final int primitiveCount;
+    private final String insertSql;
+    private final String insertRowPlaceholders;
+    private final Map<Integer, String> multiRowInsertSql = new ConcurrentHashMap<>();
+    private final Map<String, String> upsertSql = new ConcurrentHashMap<>();
+    private final String updateSql;
+    private final Map<BitSet, String> partialUpdateSql = new ConcurrentHashMap<>();
+    private final String deleteSql;
+    private final String selectByIdSql;
+    private final MethodHandle constructor;
+    private final EntityMapper<T> mapper;
+    private final LruCache<Object, Object[]> cache;
+    private final Map<String, RelationMapping> relations;
+    private final ColumnMapping shardKey;
+    private final ShardStrategy shardStrategy;
+    private final long[] shardRanges;
+
+    private EntityMetadata(Class<T> type, Table table) {
+        this.type = type;
+        this.tableName = table.name();
+
+        List<ColumnMapping> mappings = new ArrayList<>();
+        Map<String, RelationMapping> relationMappings = new LinkedHashMap<>();
+        ColumnMapping id = null;
+        int primitives = 0;
+        for (Field field : type.getDeclaredFields()) {
+            Column column = field.getAnnotation(Column.class);
+            if (column == null) {
+                RelationMapping relation = RelationMapping.of(field);
+                if (relation != null) relationMappings.put(relation.getName(), relation);
+                continue;
+            }
+            field.setAccessible(true);
+            ColumnMapping mapping = new ColumnMapping(column.name(), field, field.getType().isPrimitive() ? primitives++ : -1);
+            mappings.add(mapping);
+            if (field.getName().equals("id")) id = mapping;
+        }
+        this.columns = Collections.unmodifiableList(mappings);
+        this.relations = Collections.unmodifiableMap(relationMappings);
+        this.idColumn = id;
+        this.idIndex = mappings.indexOf(id);
+        this.primitiveCount = primitives;
+
+        String columnList = columns.stream().map(ColumnMapping::getName).collect(Collectors.joining(", "));
+        String placeholders = columns.stream().map(c -> "?").collect(Collectors.joining(", "));
+        this.insertSql = "INSERT INTO " + tableName + " (" + columnList + ") VALUES (" + placeholders + ")";
+        this.insertRowPlaceholders = "(" + placeholders + ")";
+
+        if (id != null) {
+            String setClause = columns.stream().map(c -> c.getName() + " = ?").collect(Collectors.joining(", "));
+            this.updateSql = "UPDATE " + tableName + " SET " + setClause + " WHERE " + id.getName() + " = ?";
+            this.deleteSql = "DELETE FROM " + tableName + " WHERE " + id.getName() + " = ?";
+            this.selectByIdSql = "SELECT * FROM " + tableName + " WHERE " + id.getName() + " = ?";
+        } else {
+            this.updateSql = null;
+            this.deleteSql = null;
+            this.selectByIdSql = null;
+        }
+
+        MethodHandle noArgs;
+        try {
+            Constructor<T> declared = type.getDeclaredConstructor();
+            declared.setAccessible(true);
+            noArgs = LOOKUP.unreflectConstructor(declared).asType(CONSTRUCTOR_TYPE);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            noArgs = null;
+        }
+        this.constructor = noArgs;
+        this.mapper = loadMapper(type);
+
+        Cacheable cacheable = type.getAnnotation(Cacheable.class);
+        this.cache = cacheable == null ? null : new LruCache<>(cacheable.maxSize(), cacheable.expireAfterSeconds() * 1000);
+
+        this.shardKey = table.shardKey().isEmpty() ? null : getColumn(table.shardKey());
+        if (!table.shardKey().isEmpty() && shardKey == null) {
+            throw new IllegalArgumentException("Shard key " + table.shardKey() + " is not a @Column field of " + type.getName());
+        }
+        this.shardStrategy = table.shardStrategy();
+        this.shardRanges = table.shardRanges().clone();
+    }
+
+    /**
+     * Loads the EntityMapper generated at compile time for the given model, if any.
+     *
+     * @param type the model class
+     * @return a new instance of the generated mapper, or null if none was generated for the model
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> EntityMapper<T> loadMapper(Class<T> type) {
+        String name = type.getName();
+        int packageEnd = name.lastIndexOf('.') + 1;
+        String mapperName = name.substring(0, packageEnd) + name.substring(packageEnd).replace('$', '_') + "Mapper";
+        try {
+            Class<?> mapperClass = Class.forName(mapperName, true, type.getClassLoader());
+            if (!EntityMapper.class.isAssignableFrom(mapperClass)) return null;
+            return (EntityMapper<T>) mapperClass.getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot instantiate mapper " + mapperName, e);
+        }
+    }
+
+    /**
+     * Returns the metadata of the given model class, resolving and caching it on first use.
+     *
+     * @param clazz the model class annotated with @Table
+     * @return the cached metadata of the class
+     * @throws SQLException if the class has no @Table annotation
+     */
+    @SuppressWarnings("unchecked")
+    static <T> EntityMetadata<T> of(Class<T> clazz) throws SQLException {
+        EntityMetadata<T> metadata = (EntityMetadata<T>) REGISTRY.get(clazz);
+        if (metadata != null) return metadata;
+
+        Table table = clazz.getAnnotation(Table.class);
+        if (table == null) throw new SQLException("Model must have a @Table annotation");
+        return (EntityMetadata<T>) REGISTRY.computeIfAbsent(clazz, c -> new EntityMetadata<>(clazz, table));
+    }
+
+    Class<T> getType() {
+        return type;
+    }
+
+    String getTableName() {
+        return tableName;
+    }
+
+    List<ColumnMapping> getColumns() {
+        return columns;
+    }
+
+    ColumnMapping getIdColumn() {
+        return idColumn;
+    }
+
+    /**
+     * @param name the name of a column, optionally qualified by its table name
+     * @return the mapping of the @Column field bound to the column, or null if no field is bound to it
+     */
+    ColumnMapping getColumn(String name) {
+        String column = name.substring(name.lastIndexOf('.') + 1);
+        for (ColumnMapping mapping : columns) {
+            if (mapping.getName().equals(column)) return mapping;
+        }
+        return null;
+    }
+
+    /**
+     * @param name the name of a relation field
+     * @return the relation declared by the field, or null if the model has no such relation
+     */
+    RelationMapping getRelation(String name) {
+        return relations.get(name);
+    }
+
+    /**
+     * @return true if the model declares at least one relation field
+     */
+    boolean hasRelations() {
+        return !relations.isEmpty();
+    }
+
+    /**
+     * @return the mapping of the shard key declared by @Table, or null if the table is not sharded
+     */
+    ColumnMapping getShardKey() {
+        return shardKey;
+    }
+
+    /**
+     * @return true if the table declares a shard key and shards are configured
+     */
+    boolean isSharded() {
+        return shardKey != null && Connection.shardCount() > 0;
+    }
+
+    /**
+     * Finds the shard of a key value, once converted to the Java type of the shard key field, so that a key
+     * bound to a query as "5" and a row saved with an int 5 are located on the same shard.
+     *
+     * @param key a value of the shard key
+     * @return the index of the shard holding the rows with this key
+     * @throws IllegalArgumentException if the value cannot be converted to the type of the shard key
+     */
+    int shardOf(Object key) {
+        return shardStrategy.shardOf(shardKeyValue(key), Connection.shardCount(), shardRanges);
+    }
+
+    /**
+     * Converts a value compared to the shard key into the type of the shard key field: a Long for integer
+     * fields, a Double for floating point fields, a BigDecimal without trailing zeros for BigDecimal fields and
+     * a String for String fields. Values of other fields must already be of the type of the field.
+     *
+     * @param key a value of the shard key, possibly null
+     * @return the converted value
+     * @throws IllegalArgumentException if the value cannot be converted to the type of the shard key
+     */
+    private Object shardKeyValue(Object key) {
+        if (key == null) return null;
+        Class<?> keyType = MethodType.methodType(shardKey.getField().getType()).wrap().returnType();
+        try {
+            if (keyType == Integer.class || keyType == Long.class || keyType == Short.class || keyType == Byte.class) {
+                if (key instanceof Long || key instanceof Integer || key instanceof Short || key instanceof Byte) {
+                    return ((Number) key).longValue();
+                }
+                if (key instanceof Number || key instanceof CharSequence) return new BigDecimal(key.toString().trim()).longValueExact();
+            } else if (keyType == Double.class || keyType == Float.class) {
+                if (key instanceof Number || key instanceof CharSequence) return Double.valueOf(key.toString().trim());
+            } else if (keyType == BigDecimal.class) {
+                if (key instanceof Number || key instanceof CharSequence) return new BigDecimal(key.toString().trim()).stripTrailingZeros();
+            } else if (keyType == String.class) {
+                if (key instanceof CharSequence || key instanceof Number || key instanceof Character) return key.toString();
+            } else if (keyType.isInstance(key)) {
+                return key;
+            }
+        } catch (NumberFormatException | ArithmeticException e) {
+            // Reported below as a value of the wrong type.
+        }
+        throw new IllegalArgumentException("The shard key " + shardKey.getName() + " of " + type.getName() + " is a "
+                + keyType.getSimpleName() + ", got " + key.getClass().getSimpleName() + " " + key);
+    }
+
+    /**
+     * @param entity an entity of the sharded table
+     * @return the index of the shard holding the row of the entity
+     * @throws IllegalStateException if the shard key of the entity is not set
+     * @throws IllegalAccessException if the shard key field cannot be accessed
+     */
+    int shardOfEntity(T entity) throws IllegalAccessException {
+        Object key = shardKey.get(entity);
+        if (key == null) {
+            throw new IllegalStateException("The shard key " + shardKey.getName() + " of " + type.getName() + " must be set before it is written");
+        }
+        return shardOf(key);
+    }
+
+    String getInsertSql() {
+        return insertSql;
+    }
+
+    /**
+     * Returns the INSERT statement inserting the given number of rows in a single VALUES list,
+     * rendering and caching it on first use.
+     *
+     * @param rows the number of rows inserted by the statement
+     * @return the multi-row INSERT statement
+     */
+    String getInsertSql(int rows) {
+        if (rows == 1) return insertSql;
+        return multiRowInsertSql.computeIfAbsent(rows, n -> {
+            StringBuilder sql = new StringBuilder(insertSql.length() + n * (insertRowPlaceholders.length() + 2));
+            sql.append(insertSql, 0, insertSql.length() - insertRowPlaceholders.length());
+            for (int i = 0; i < n; i++) {
+                if (i > 0) sql.append(", ");
+                sql.append(insertRowPlaceholders);
+            }
+            return sql.toString();
+        });
+    }
+
+    /**
+     * Returns the INSERT ... ON DUPLICATE KEY UPDATE statement inserting the given number of rows,
+     * rendering and caching it on first use. On conflict, the given columns are overwritten with the inserted
+     * values and the id of the existing row is exposed as the generated key through LAST_INSERT_ID.
+     *
+     * @param rows          the number of rows inserted by the statement
+     * @param updateColumns the columns updated on conflict, or none to update every column except the id
+     * @return the upsert statement
+     */
+    String getUpsertSql(int rows, String... updateColumns) {
+        String key = rows + ":" + String.join(",", updateColumns);
+        return upsertSql.computeIfAbsent(key, k -> {
+            List<String> assignments = new ArrayList<>();
+            if (updateColumns.length == 0) {
+                for (ColumnMapping column : columns) {
+                    if (column != idColumn) assignments.add(column.getName() + " = VALUES(" + column.getName() + ")");
+                }
+            } else {
+                for (String column : updateColumns) {
+                    assignments.add(column + " = VALUES(" + column + ")");
+                }
+            }
+            if (idColumn != null) {
+                assignments.add(idColumn.getName() + " = LAST_INSERT_ID(" + idColumn.getName() + ")");
+            }
+            return getInsertSql(rows) + " ON DUPLICATE KEY UPDATE " + String.join(", ", assignments);
+        });
+    }
+
+    String getUpdateSql() {
+        return updateSql;
+    }
+
+    /**
+     * Returns the UPDATE statement setting only the given columns, rendering and caching it on first use.
+     *
+     * @param changed the indexes, in the column list, of the columns to set
+     * @return the UPDATE statement filtered on the id column
+     */
+    String getUpdateSql(BitSet changed) {
+        return partialUpdateSql.computeIfAbsent(changed, c -> {
+            StringBuilder sql = new StringBuilder("UPDATE ").append(tableName).append(" SET ");
+            for (int i = c.nextSetBit(0); i >= 0; i = c.nextSetBit(i + 1)) {
+                if (sql.charAt(sql.length() - 1) == '?') sql.append(", ");
+                sql.append(columns.get(i).getName()).append(" = ?");
+            }
+            return sql.append(" WHERE ").append(idColumn.getName()).append(" = ?").toString();
+        });
+    }
+
+    int getIdIndex() {
+        return idIndex;
+    }
+
+    String getDeleteSql() {
+        return deleteSql;
+    }
+
+    String getSelectByIdSql() {
+        return selectByIdSql;
+    }
+
+    EntityMapper<T> getMapper() {
+        return mapper;
+    }
+
+    /**
+     * @return the second-level cache of the model's rows, or null if the model is not annotated with @Cacheable
+     */
+    LruCache<Object, Object[]> getCache() {
+        return cache;
+    }
+
+    /**
+     * Normalizes an id into a second-level cache key, so that int and long ids of the same row are equal.
+     *
+     * @param id the id value
+     * @return the cache key of the id
+     */
+    static Object cacheKey(Object id) {
+        return id instanceof Number ? (Object) ((Number) id).longValue() : id;
+    }
+
+    /**
+     * Removes the row with the given id from the second-level cache, if the model is cached,
+     * and invalidates the cached query results reading the model's table.
+     *
+     * @param id the id of the modified row, or null if unknown
+     */
+    void evict(Object id) {
+        if (cache != null && id != null) cache.invalidate(cacheKey(id));
+        QueryCache.invalidateTable(tableName);
+    }
+
+    /**
+     * Clears the second-level cache of every model mapped to the given table
+     * and invalidates the cached query results reading it.
+     *
+     * @param tableName the name of the modified table
+     */
+    static void evictTable(String tableName) {
+        QueryCache.invalidateTable(tableName);
+        for (EntityMetadata<?> metadata : REGISTRY.values()) {
+            if (metadata.cache != null && metadata.tableName.equalsIgnoreCase(tableName)) {
+                metadata.cache.invalidateAll();
+            }
+        }
+    }
+
+    /**
+     * Returns the id column of the model.
+     *
+     * @return the mapping of the field named "id"
+     * @throws SQLException if the model does not declare an id field annotated with @Column
+     */
+    ColumnMapping requireIdColumn() throws SQLException {
+        if (idColumn == null) throw new SQLException("Model " + type.getName() + " must have an @Column id field");
+        return idColumn;
+    }
+
+    /**
+     * Creates a new, empty instance of the model through its no-argument constructor.
+     *
+     * @return a new model instance
+     * @throws NoSuchMethodException if the model has no no-argument constructor
+     * @throws InstantiationException if the model class is abstract
+     * @throws IllegalAccessException if the constructor cannot be accessed
+     * @throws InvocationTargetException if the constructor throws an exception
+     */
+    T newInstance() throws NoSuchMethodException, InstantiationException, IllegalAccessException, InvocationTargetException {
+        if (Modifier.isAbstract(type.getModifiers())) throw new InstantiationException(type.getName());
+        if (constructor == null) throw new NoSuchMethodException(type.getName() + ".<init>()");
+        try {
+            return type.cast((Object) constructor.invokeExact());
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    /**
+     * Renders a SELECT list of every @Column field of the model, qualified by the given table reference and
+     * labeled with the given prefix, so that columns of several tables of a join do not collide.
+     *
+     * @param table the name or alias of the table in the query
+     * @param prefix the prefix of the column labels
+     * @return the comma-separated column list, such as "t.id AS p_id, t.name AS p_name"
+     */
+    String getAliasedColumns(String table, String prefix) {
+        return columns.stream()
+                .map(c -> table + "." + c.getName() + " AS " + prefix + c.getName())
+                .collect(Collectors.joining(", "));
+    }
+
+    /**
+     * Resolves the index of each @Column field in the given result set, once for all its rows.
+     *
+     * @param rs the result set to read
+     * @return the index of each column in the result set, in column order, or 0 for columns not part of the result
+     * @throws SQLException if the result set is closed
+     */
+    int[] columnIndexes(ResultSet rs) throws SQLException {
+        return columnIndexes(rs, "");
+    }
+
+    /**
+     * Resolves the index of each @Column field in the given result set, where each column is labeled
+     * with the given prefix followed by its name, as selected by getAliasedColumns(String, String).
+     *
+     * @param rs the result set to read
+     * @param prefix the prefix of the column labels
+     * @return the index of each column in the result set, in column order, or 0 for columns not part of the result
+     * @throws SQLException if the result set is closed
+     */
+    int[] columnIndexes(ResultSet rs, String prefix) throws SQLException {
+        int[] indexes = new int[columns.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            try {
+                indexes[i] = rs.findColumn(prefix + columns.get(i).getName());
+            } catch (SQLException e) {
+                if (rs.isClosed()) throw e;
+                indexes[i] = 0;
+            }
+        }
+        return indexes;
+    }
+
+    /**
+     * Creates a model instance from the current row of the given result set.
+     * Prefer hydrate(ResultSet, int[]) when reading several rows of the same result set.
+     *
+     * @param rs the result set positioned on the row to read
+     * @return the hydrated model instance
+     * @throws SQLException if a column cannot be read
+     * @throws NoSuchMethodException if the model has no no-argument constructor
+     * @throws InstantiationException if the model class is abstract
+     * @throws IllegalAccessException if a field or the constructor cannot be accessed
+     * @throws InvocationTargetException if the constructor throws an exception
+     */
+    T hydrate(ResultSet rs) throws SQLException, NoSuchMethodException, InstantiationException, IllegalAccessException, InvocationTargetException {
+        return hydrate(rs, columnIndexes(rs));
+    }
+
+    /**
+     * Creates a model instance from the current row of the given result set, reading each column by index
+     * with the getter matching the declared type of its field. Fields whose column is not part of the result
+     * keep their default value.
+     *
+     * @param rs the result set positioned on the row to read
+     * @param indexes the column indexes resolved by columnIndexes(ResultSet)
+     * @return the hydrated model instance
+     * @throws SQLException if a column cannot be read
+     * @throws NoSuchMethodException if the model has no no-argument constructor
+     * @throws InstantiationException if the model class is abstract
+     * @throws IllegalAccessException if a field or the constructor cannot be accessed
+     * @throws InvocationTargetException if the constructor throws an exception
+     */
+    T hydrate(ResultSet rs, int[] indexes) throws SQLException, NoSuchMethodException, InstantiationException, IllegalAccessException, InvocationTargetException {
+        T instance;
+        if (mapper != null) {
+            instance = mapper.read(rs, indexes);
+        } else {
+            instance = newInstance();
+            for (int i = 0; i < indexes.length; i++) {
+                if (indexes[i] > 0) columns.get(i).read(instance, rs, indexes[i]);
+            }
+        }
+        if (instance instanceof Model) {
+            markLoaded((Model) instance, instance);
+        }
+        return instance;
+    }
+
+    /**
+     * Records the values just hydrated into the model as its persisted state, without boxing them:
+     * object fields are copied by reference and primitive fields as raw bits, which unpack() only boxes
+     * once update() or a cache needs the state of the model.
+     *
+     * @param model the hydrated model
+     * @param instance the same instance, as the model type
+     * @throws IllegalAccessException if a field cannot be accessed
+     */
+    private void markLoaded(Model model, T instance) throws IllegalAccessException {
+        Object[] references = new Object[columns.size()];
+        long[] primitives = primitiveCount == 0 ? null : new long[primitiveCount];
+        for (int i = 0; i < references.length; i++) {
+            ColumnMapping column = columns.get(i);
+            if (column.primitiveSlot >= 0) {
+                primitives[column.primitiveSlot] = column.getBits(instance);
+            } else {
+                references[i] = column.get(instance);
+            }
+        }
+        model.markLoaded(references, primitives);
+    }
+
+    /**
+     * Completes a state recorded by markLoaded() into a snapshot, boxing the values of the primitive fields
+     * into their slots of the given array.
+     *
+     * @param references the values of the object fields, in column order, completed in place
+     * @param primitives the raw bits of the primitive fields
+     */
+    void unpack(Object[] references, long[] primitives) {
+        for (int i = 0; i < references.length; i++) {
+            ColumnMapping column = columns.get(i);
+            if (column.primitiveSlot >= 0) references[i] = column.valueType.box(primitives[column.primitiveSlot]);
+        }
+    }
+
+    /**
+     * Creates a model instance from values previously copied by snapshot().
+     *
+     * @param values the field values, in column order
+     * @return a new model instance holding the values
+     * @throws NoSuchMethodException if the model has no no-argument constructor
+     * @throws InstantiationException if the model class is abstract
+     * @throws IllegalAccessException if a field or the constructor cannot be accessed
+     * @throws InvocationTargetException if the constructor throws an exception
+     */
+    T fromSnapshot(Object[] values) throws NoSuchMethodException, InstantiationException, IllegalAccessException, InvocationTargetException {
+        T instance = newInstance();
+        for (int i = 0; i < values.length; i++) {
+            columns.get(i).set(instance, values[i]);
+        }
+        if (instance instanceof Model) {
+            ((Model) instance).markClean(values);
+        }
+        return instance;
+    }
+
+    /**
+     * Copies the current value of every @Column field of the entity, in column order.
+     *
+     * @param entity the entity to copy
+     * @return the field values of the entity
+     * @throws IllegalAccessException if a field cannot be accessed
+     */
+    Object[] snapshot(T entity) throws IllegalAccessException {
+        Object[] values = new Object[columns.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = columns.get(i).get(entity);
+        }
+        return values;
+    }
+
+    /**
+     * Compares two snapshots of the same entity.
+     *
+     * @param previous the values of the entity when it was last loaded or written
+     * @param current  the current values of the entity
+     * @return the indexes of the columns whose value differs
+     */
+    BitSet changedColumns(Object[] previous, Object[] current) {
+        BitSet changed = new BitSet(current.length);
+        for (int i = 0; i < current.length; i++) {
+            if (!Objects.deepEquals(previous[i], current[i])) changed.set(i);
+        }
+        return changed;
+    }
+
+    /**
+     * Binds every @Column field of the entity, in declaration order, starting at the given parameter index.
+     *
+     * @param stmt the statement to bind
+     * @param entity the entity providing the values
+     * @param index the index of the first parameter to bind
+     * @return the index of the next unbound parameter
+     * @throws SQLException if a parameter cannot be bound
+     * @throws IllegalAccessException if a field cannot be accessed
+     */
+    int bind(PreparedStatement stmt, T entity, int index) throws SQLException, IllegalAccessException {
+        if (mapper != null) return mapper.bind(stmt, entity, index);
+
+        for (ColumnMapping column : columns) {
+            stmt.setObject(index++, column.get(entity));
+        }
+        return index;
+    }
+
+    /**
+     * Binds the id of the entity at the given parameter index.
+     *
+     * @param stmt the statement to bind
+     * @param entity the entity providing the id
+     * @param index the index of the parameter to bind
+     * @throws SQLException if the parameter cannot be bound or the model has no id
+     * @throws IllegalAccessException if the id field cannot be accessed
+     */
+    void bindId(PreparedStatement stmt, T entity, int index) throws SQLException, IllegalAccessException {
+        if (mapper != null) {
+            mapper.bindId(stmt, entity, index);
+            return;
+        }
+        stmt.setObject(index, requireIdColumn().get(entity));
+    }
+
+    /**
+     * Writes a key generated by the database back into the id field of the entity.
+     *
+     * @param entity the entity that was inserted
+     * @param id the generated key
+     * @throws IllegalAccessException if the id field cannot be accessed
+     */
+    void setGeneratedId(T entity, int id) throws IllegalAccessException {
+        if (mapper != null) {
+            mapper.setGeneratedId(entity, id);
+            return;
+        }
+        idColumn.set(entity, id);
+    }
+
+    /**
+     * Association between a database column and the model field annotated with @Column.
+     */
+    static final class ColumnMapping {
+        private final String name;
+        private final Field field;
+        private final MethodHandle getter;
+        private final MethodHandle primitiveGetter;
+        private final MethodHandle setter;
+        private final MethodHandle primitiveSetter;
+        private final Class<?> boxedType;
+        private final ValueType valueType;
+        private final int primitiveSlot;
+        private volatile AdaptedSetter adaptedSetter;
+
+        /**
+         * @param name the name of the column
+         * @param field the field bound to the column
+         * @param primitiveSlot the index of the field among the primitive fields of the model, or -1 for an object field
+         */
+        private ColumnMapping(String name, Field field, int primitiveSlot) {
+            this.name = name;
+            this.field = field;
+            this.primitiveSlot = primitiveSlot;
+            this.boxedType = MethodType.methodType(field.getType()).wrap().returnType();
+            this.valueType = ValueType.of(field.getType());
+            try {
+                MethodHandle unreflected = LOOKUP.unreflectSetter(field);
+                MethodHandle unreflectedGetter = LOOKUP.unreflectGetter(field);
+                this.getter = unreflectedGetter.asType(GETTER_TYPE);
+                this.setter = unreflected.asType(SETTER_TYPE);
+                this.primitiveGetter = field.getType().isPrimitive()
+                        ? unreflectedGetter.asType(MethodType.methodType(field.getType(), Object.class))
+                        : null;
+                this.primitiveSetter = field.getType().isPrimitive()
+                        ? unreflected.asType(MethodType.methodType(void.class, Object.class, field.getType()))
+                        : null;
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot access field " + field, e);
+            }
+        }
+
+        String getName() {
+            return name;
+        }
+
+        Field getField() {
+            return field;
+        }
+
+        /**
+         * Reads the value of the field on the given instance.
+         *
+         * @param instance the model instance
+         * @return the current field value
+         * @throws IllegalAccessException if the field cannot be accessed
+         */
+        Object get(Object instance) throws IllegalAccessException {
+            try {
+                return (Object) getter.invokeExact(instance);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * Reads the value of a primitive field on the given instance without boxing it.
+         *
+         * @return the raw bits of the value, which ValueType.box() turns back into the value
+         */
+        private long getBits(Object instance) {
+            try {
+                switch (valueType) {
+                    case INT: return (int) primitiveGetter.invokeExact(instance);
+                    case LONG: return (long) primitiveGetter.invokeExact(instance);
+                    case DOUBLE: return Double.doubleToRawLongBits((double) primitiveGetter.invokeExact(instance));
+                    case FLOAT: return Float.floatToRawIntBits((float) primitiveGetter.invokeExact(instance));
+                    case BOOLEAN: return (boolean) primitiveGetter.invokeExact(instance) ? 1 : 0;
+                    case SHORT: return (short) primitiveGetter.invokeExact(instance);
+                    case BYTE: return (byte) primitiveGetter.invokeExact(instance);
+                    default: throw new IllegalStateException(field + " is not a primitive field");
+                }
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * Writes a value into the field of the given instance.
+         * Values whose type does not match a primitive field exactly, such as an Integer written into a long
+         * field, go through a setter handle adapted to their class, which applies the widening conversions of
+         * Field.set. A null value written into a primitive field stores its default value, as SQL NULL does.
+         *
+         * @param instance the model instance
+         * @param value the value to assign
+         * @throws IllegalAccessException if the field cannot be accessed
+         * @throws IllegalArgumentException if the value cannot be converted to the type of the field
+         */
+        void set(Object instance, Object value) throws IllegalAccessException {
+            MethodHandle handle = setter;
+            if (primitiveSetter != null) {
+                if (value == null) value = valueType.defaultValue();
+                if (value.getClass() != boxedType) handle = adaptedSetter(value.getClass());
+            } else if (value != null && !boxedType.isInstance(value)) {
+                throw mismatch(value.getClass());
+            }
+            try {
+                handle.invokeExact(instance, value);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * Reads the column at the given index of the current row with the ResultSet getter matching the
+         * declared type of the field, and writes it into the field without boxing primitive values.
+         * SQL NULL is stored as null in object fields and as the default value in primitive fields.
+         *
+         * @param instance the model instance
+         * @param rs the result set positioned on the row to read
+         * @param index the index of the column in the result set
+         * @throws SQLException if the column cannot be read
+         * @throws IllegalAccessException if the field cannot be accessed
+         */
+        void read(Object instance, ResultSet rs, int index) throws SQLException, IllegalAccessException {
+            try {
+                switch (valueType) {
+                    case INT: primitiveSetter.invokeExact(instance, rs.getInt(index)); return;
+                    case LONG: primitiveSetter.invokeExact(instance, rs.getLong(index)); return;
+                    case DOUBLE: primitiveSetter.invokeExact(instance, rs.getDouble(index)); return;
+                    case FLOAT: primitiveSetter.invokeExact(instance, rs.getFloat(index)); return;
+                    case BOOLEAN: primitiveSetter.invokeExact(instance, rs.getBoolean(index)); return;
+                    case SHORT: primitiveSetter.invokeExact(instance, rs.getShort(index)); return;
+                    case BYTE: primitiveSetter.invokeExact(instance, rs.getByte(index)); return;
+                    default: break;
+                }
+            } catch (SQLException | RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+            set(instance, valueType.read(rs, index));
+        }
+
+        /**
+         * Returns the setter of this primitive field taking values of the given wrapper class, converted with the
+         * widening primitive conversions of Field.set. The handle of the last class is kept, as the values written
+         * into a column, such as the generated keys of an id or the rows of a cache, are all of the same class.
+         *
+         * @param valueClass the class of the value to write
+         * @return the setter handle of type (Object, Object)void
+         * @throws IllegalArgumentException if values of the class cannot be converted to the type of the field
+         */
+        private MethodHandle adaptedSetter(Class<?> valueClass) {
+            AdaptedSetter adapted = adaptedSetter;
+            if (adapted != null && adapted.valueClass == valueClass) return adapted.handle;
+
+            Class<?> primitive = MethodType.methodType(valueClass).unwrap().returnType();
+            if (!primitive.isPrimitive()) throw mismatch(valueClass);
+            MethodHandle handle;
+            try {
+                handle = primitiveSetter.asType(MethodType.methodType(void.class, Object.class, primitive)).asType(SETTER_TYPE);
+            } catch (WrongMethodTypeException e) {
+                throw mismatch(valueClass);
+            }
+            adaptedSetter = new AdaptedSetter(valueClass, handle);
+            return handle;
+        }
+
+        private IllegalArgumentException mismatch(Class<?> valueClass) {
+            return new IllegalArgumentException("Can not set " + field.getType().getName() + " field "
+                    + field.getDeclaringClass().getName() + "." + field.getName() + " to " + valueClass.getName());
+        }
+
+        /**
+         * Setter handle of a primitive field adapted to the wrapper class of the values written into it.
+         */
+        private static final class AdaptedSetter {
+            private final Class<?> valueClass;
+            private final MethodHandle handle;
+
+            private AdaptedSetter(Class<?> valueClass, MethodHandle handle) {
+                this.valueClass = valueClass;
+                this.handle = handle;
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package fr.flylonyx.jdorm.library.core;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the results of a query page by page with keyset (seek) pagination, created by QueryBuilder.paginateBy().
+ * Each page is fetched lazily with a WHERE (sort columns) > (last seen values) filter and an ORDER BY on the sort
+ * columns, so that the database seeks directly to the page instead of reading and discarding the previous rows.
+ *
+ * @param <T> the model type of the paginated query
+ */
+public final class KeysetPaginator<T extends Model> implements Iterable<List<T>> {
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    private final QueryBuilder<T> query;
+    private final String[] columns;
+    private final EntityMetadata.ColumnMapping[] keys;
+    private int pageSize = DEFAULT_PAGE_SIZE;
+    private boolean descending;
+
+    KeysetPaginator(QueryBuilder<T> query, String[] columns, EntityMetadata.ColumnMapping[] keys) {
+        this.query = query;
+        this.columns = columns;
+        this.keys = keys;
+    }
+
+    /**
+     * Sets the maximum number of rows of each page.
+     *
+     * @param pageSize the number of rows per page, 100 by default
+     * @return the KeysetPaginator instance for method chaining
+     */
+    public KeysetPaginator<T> pageSize(int pageSize) {
+        if (pageSize <= 0) throw new IllegalArgumentException("Page size must be positive");
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    /**
+     * Sorts the pages in descending order of the sort columns instead of ascending order.
+     *
+     * @return the KeysetPaginator instance for method chaining
+     */
+    public KeysetPaginator<T> descending() {
+        this.descending = true;
+        return this;
+    }
+
+    /**
+     * Returns an iterator over the pages of the query, each page being fetched when it is reached.
+     * The page queries are compiled once per iterator, then only bound with the last seen sort key.
+     * Iteration stops after the first page holding fewer rows than the page size.
+     * Errors raised by the database are rethrown as IllegalStateException.
+     *
+     * @return an iterator over the non-empty pages of the query
+     */
+    @Override
+    public Iterator<List<T>> iterator() {
+        CompiledQuery<T> firstPage = query.compilePage(columns, descending, pageSize, false);
+        CompiledQuery<T> nextPage = query.compilePage(columns, descending, pageSize, true);
+
+        return new Iterator<List<T>>() {
+            private Object[] lastKey;
+            private List<T> next;
+            private boolean done;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null && !done) {
+                    next = fetchNext();
+                }
+                return next != null;
+            }
+
+            @Override
+            public List<T> next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                List<T> page = next;
+                next = null;
+                return page;
+            }
+
+            private List<T> fetchNext() {
+                List<T> page;
+                try {
+                    if (lastKey == null) {
+                        page = firstPage.execute();
+                    } else {
+                        Object[] values = nextPage.getParameters().toArray(new Object[nextPage.getParameterCount()]);
+                        System.arraycopy(lastKey, 0, values, values.length - lastKey.length, lastKey.length);
+                        page = nextPage.execute(values);
+                    }
+                    if (!page.isEmpty()) {
+                        T last = page.get(page.size() - 1);
+                        Object[] key = new Object[keys.length];
+                        for (int i = 0; i < keys.length; i++) {
+                            key[i] = keys[i].get(last);
+                        }
+                        lastKey = key;
+                    }
+                } catch (Exception e) {
+                    done = true;
+                    throw new IllegalStateException("Unable to fetch the next page of the query", e);
+                }
+
+                if (page.size() < pageSize) done = true;
+                return page.isEmpty() ? null : page;
+            }
+        };
+    }
+}
@@ -13,13 +13,14 @@ public class MigrationManager {
 
     /**
      * Initializes the migrations table by creating it if it does not already exist.
-     * This method uses the existing database connection obtained from Connection.getConnection().
+     * This method borrows a pooled connection with Connection.getConnection() and gives it back once done.
      * An SQL exception may be thrown if there is an issue executing the create table command.
      *
      * @throws SQLException if an error occurs during table creation.
      */
     public static void initialize() throws SQLException {
-        try (Statement statement = Connection.getConnection().createStatement()) {
+        try (java.sql.Connection connection = Connection.getConnection();
+             Statement statement = connection.createStatement()) {
             statement.execute("CREATE TABLE IF NOT EXISTS " + MIGRATIONS_TABLE + " (" +
                     "id INT AUTO_INCREMENT PRIMARY KEY, " +
                     "migration_name VARCHAR(255) NOT NULL, " +
@@ -37,7 +38,8 @@ public class MigrationManager {
         List<String> executedMigrations = new ArrayList<>();
         String query = "SELECT migration_name FROM " + MIGRATIONS_TABLE;
 
-        try (Statement stmt = Connection.getConnection().createStatement();
+        try (java.sql.Connection connection = Connection.getConnection();
+             Statement stmt = connection.createStatement();
              ResultSet rs = stmt.executeQuery(query)) {
             while (rs.next()) {
                 executedMigrations.add(rs.getString("migration_name"));
@@ -101,7 +103,7 @@ public class MigrationManager {
      */
     private static boolean isMigrationExecuted(@NonNull String migrationName) throws SQLException {
         String query = "SELECT COUNT(*) FROM " + MIGRATIONS_TABLE + " WHERE migration_name = ?";
-        try (PreparedStatement stmt = Connection.getConnection().prepareStatement(query)) {
+        try (PreparedStatement stmt = Connection.prepareStatement(query)) {
             stmt.setString(1, migrationName);
 
             try (ResultSet rs = stmt.executeQuery()) {
@@ -121,7 +123,7 @@ public class MigrationManager {
      */
     private static void logMigration(@NonNull String migrationName) throws SQLException {
         String query = "INSERT INTO " + MIGRATIONS_TABLE + " (migration_name) VALUES (?)";
-        try (PreparedStatement stmt = Connection.getConnection().prepareStatement(query)) {
+        try (PreparedStatement stmt = Connection.prepareStatement(query)) {
             stmt.setString(1, migrationName);
             stmt.executeUpdate();
         }
@@ -136,7 +138,7 @@ public class MigrationManager {
      */
     private static void removeMigrationLog(@NonNull String migrationName) throws SQLException {
         String query = "DELETE FROM " + MIGRATIONS_TABLE + " WHERE migration_name = ?";
-        try (PreparedStatement stmt = Connection.getConnection().prepareStatement(query)) {
+        try (PreparedStatement stmt = Connection.prepareStatement(query)) {
             stmt.setString(1, migrationName);
             stmt.executeUpdate();
         }
@@ -1,128 +1,529 @@
 package fr.flylonyx.jdorm.library.core;
 
-import fr.flylonyx.jdorm.library.annotations.Column;
-import fr.flylonyx.jdorm.library.annotations.Table;
+import fr.flylonyx.jdorm.library.cache.CacheStats;
+import fr.flylonyx.jdorm.library.cache.LruCache;
 import fr.flylonyx.jdorm.library.database.Connection;
+import fr.flylonyx.jdorm.library.database.ShardScope;
+import fr.flylonyx.jdorm.library.database.Transaction;
 
-import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.sql.*;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 
 
 public abstract class Model {
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final int MAX_PLACEHOLDERS = 65535;
+
+    private transient Object[] snapshot;
+    private transient long[] snapshotBits;
+    private transient SiblingGroup siblings;
+    private transient int siblingIndex;
+    private transient Set<String> loadedRelations;
 
     /**
      * Saves the current model instance to the database.
-     * Retrieves the table name from the class's @Table annotation.
-     * Maps fields annotated with @Column to corresponding column names and values.
-     * Constructs and executes an SQL INSERT query to save the model to the table.
+     * Uses the cached entity metadata of the model class to bind every field annotated with @Column
+     * to the pre-rendered INSERT statement of its table.
      * If the table has a generated primary key, sets the generated ID back to the model's id field.
+     * Inside Connection.inTransaction(), the insert is queued in a JDBC batch and the ID is set once the batch
+     * is flushed.
+     * If the table is sharded, the row is inserted on the shard of its shard key, which must therefore be set
+     * beforehand: a key generated by the database, such as an auto-increment id, is only known once inserted.
      *
      * @throws SQLException if an SQL exception occurs during the save operation.
      * @throws IllegalAccessException if access to a field is not allowed during reflection.
      * @throws NoSuchFieldException if a field does not exist in the model class.
      */
     public void save() throws SQLException, IllegalAccessException, NoSuchFieldException {
-        Table table = this.getClass().getAnnotation(Table.class);
-        if (table == null) throw new SQLException("Model must have a @Table annotation");
+        EntityMetadata<Model> metadata = metadata();
+        ShardScope scope = shardScope(metadata);
+        try {
+            insert(metadata);
+        } finally {
+            if (scope != null) scope.close();
+        }
+    }
 
-        String tableName = table.name();
-        Map<String, Object> fields = new HashMap<>();
+    private void insert(EntityMetadata<Model> metadata) throws SQLException, IllegalAccessException, NoSuchFieldException {
+        Transaction transaction = Connection.currentTransaction();
+        if (transaction != null) {
+            transaction.addBatch(metadata.getInsertSql(), Statement.RETURN_GENERATED_KEYS, stmt -> metadata.bind(stmt, this, 1), keys -> {
+                if (keys != null) {
+                    if (metadata.getIdColumn() == null) throw new NoSuchFieldException("id");
+                    metadata.setGeneratedId(this, keys.getInt(1));
+                }
+                markPersisted(metadata);
+            });
+            return;
+        }
+
+        try (PreparedStatement stmt = Connection.prepareStatement(metadata.getInsertSql(), Statement.RETURN_GENERATED_KEYS)) {
+            metadata.bind(stmt, this, 1);
+            stmt.executeUpdate();
 
-        for (Field field : this.getClass().getDeclaredFields()) {
-            if (field.isAnnotationPresent(Column.class)) {
-                Column column = field.getAnnotation(Column.class);
-                field.setAccessible(true);
-                fields.put(column.name(), field.get(this));
+            try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+                if (generatedKeys.next()) {
+                    if (metadata.getIdColumn() == null) throw new NoSuchFieldException("id");
+                    metadata.setGeneratedId(this, generatedKeys.getInt(1));
+                }
             }
         }
+        markPersisted(metadata);
+    }
 
-        String columns = String.join(", ", fields.keySet());
-        String values = String.join(", ", fields.values().stream().map(v -> "?").toArray(String[]::new));
-        String sql = "INSERT INTO " + tableName + " (" + columns + ") VALUES (" + values + ")";
 
-        try (PreparedStatement stmt = Connection.getConnection().prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            int i = 1;
-            for (Object value : fields.values()) {
-                stmt.setObject(i++, value);
+    /**
+     * Saves all the given model instances to the database using JDBC batches of 1000 rows.
+     * Generated IDs are set back, in order, to the id field of each model.
+     *
+     * @param models the model instances to save.
+     * @throws SQLException if an SQL exception occurs during the save operation.
+     * @throws IllegalAccessException if access to a field is not allowed during reflection.
+     */
+    public static <T extends Model> void saveAll(Collection<T> models) throws SQLException, IllegalAccessException {
+        saveAll(models, DEFAULT_BATCH_SIZE, false);
+    }
+
+    /**
+     * Saves all the given model instances to the database, sending them in chunks of the given size.
+     * Each chunk is either sent as a JDBC batch of single-row INSERT statements, or as one multi-row
+     * INSERT ... VALUES (...), (...) statement. Multi-row chunks are shrunk if needed to stay under the
+     * placeholder limit of MySQL. Models of different classes are inserted in separate statements,
+     * and the models of a sharded table are sent to the shard of their shard key, one shard after the other.
+     * Generated IDs are set back, in order, to the id field of each model.
+     *
+     * @param models the model instances to save.
+     * @param chunkSize the maximum number of rows sent per round trip.
+     * @param multiRowInsert true to send each chunk as one multi-row INSERT, false to use a JDBC batch.
+     * @throws SQLException if an SQL exception occurs during the save operation.
+     * @throws IllegalAccessException if access to a field is not allowed during reflection.
+     */
+    public static <T extends Model> void saveAll(Collection<T> models, int chunkSize, boolean multiRowInsert) throws SQLException, IllegalAccessException {
+        writeAll(models, chunkSize, multiRowInsert, null);
+    }
+
+    /**
+     * Inserts or updates the current model instance with a single INSERT ... ON DUPLICATE KEY UPDATE statement.
+     * When a row with the same primary or unique key already exists, the given columns are overwritten,
+     * or every column except the id when none is given.
+     * The id of the inserted or updated row is set back to the model's id field. As the row may not hold every
+     * value of the model afterwards, the next update() writes every column.
+     *
+     * @param updateColumns the columns to overwrite when the row already exists.
+     * @throws SQLException if an SQL exception occurs during the upsert operation.
+     * @throws IllegalAccessException if access to a field is not allowed during reflection.
+     */
+    public void upsert(String... updateColumns) throws SQLException, IllegalAccessException {
+        EntityMetadata<Model> metadata = metadata();
+
+        ShardScope scope = shardScope(metadata);
+        try (PreparedStatement stmt = Connection.prepareStatement(metadata.getUpsertSql(1, updateColumns), Statement.RETURN_GENERATED_KEYS)) {
+            metadata.bind(stmt, this, 1);
+            stmt.executeUpdate();
+            setGeneratedIds(metadata, stmt, Collections.singletonList(this));
+        } finally {
+            if (scope != null) scope.close();
+        }
+        markUpserted(metadata, Collections.singletonList(this));
+    }
+
+    /**
+     * Inserts or updates all the given model instances using JDBC batches of 1000 rows.
+     *
+     * @param models the model instances to upsert.
+     * @param updateColumns the columns to overwrite when a row already exists, or none for every column except the id.
+     * @throws SQLException if an SQL exception occurs during the upsert operation.
+     * @throws IllegalAccessException if access to a field is not allowed during reflection.
+     * @see #upsertAll(Collection, int, boolean, String...)
+     */
+    public static <T extends Model> void upsertAll(Collection<T> models, String... updateColumns) throws SQLException, IllegalAccessException {
+        upsertAll(models, DEFAULT_BATCH_SIZE, false, updateColumns);
+    }
+
+    /**
+     * Inserts or updates all the given model instances with INSERT ... ON DUPLICATE KEY UPDATE statements,
+     * chunked the same way as {@link #saveAll(Collection, int, boolean)}.
+     * Ids are not set back to the models, because MySQL does not report one key per row for batched upserts,
+     * so the models must be reloaded before being updated or deleted.
+     *
+     * @param models the model instances to upsert.
+     * @param chunkSize the maximum number of rows sent per round trip.
+     * @param multiRowInsert true to send each chunk as one multi-row statement, false to use a JDBC batch.
+     * @param updateColumns the columns to overwrite when a row already exists, or none for every column except the id.
+     * @throws SQLException if an SQL exception occurs during the upsert operation.
+     * @throws IllegalAccessException if access to a field is not allowed during reflection.
+     */
+    public static <T extends Model> void upsertAll(Collection<T> models, int chunkSize, boolean multiRowInsert, String... updateColumns) throws SQLException, IllegalAccessException {
+        writeAll(models, chunkSize, multiRowInsert, updateColumns);
+    }
+
+    /**
+     * Inserts the given models in chunks, grouped by class, either as plain inserts or as upserts.
+     *
+     * @param models the model instances to write.
+     * @param chunkSize the maximum number of rows sent per round trip.
+     * @param multiRowInsert true to send each chunk as one multi-row statement, false to use a JDBC batch.
+     * @param updateColumns the columns to overwrite on conflict, or null for a plain insert.
+     * @throws SQLException if an SQL exception occurs during the insertion.
+     * @throws IllegalAccessException if access to a field is not allowed during reflection.
+     */
+    private static void writeAll(Collection<? extends Model> models, int chunkSize, boolean multiRowInsert, String[] updateColumns) throws SQLException, IllegalAccessException {
+        if (chunkSize < 1) throw new IllegalArgumentException("Chunk size must be positive");
+
+        Map<Class<?>, List<Model>> modelsByClass = new LinkedHashMap<>();
+        for (Model model : models) {
+            modelsByClass.computeIfAbsent(model.getClass(), c -> new ArrayList<>()).add(model);
+        }
+
+        for (List<Model> group : modelsByClass.values()) {
+            EntityMetadata<Model> metadata = group.get(0).metadata();
+            if (!metadata.isSharded()) {
+                writeChunks(metadata, group, chunkSize, multiRowInsert, updateColumns);
+                continue;
+            }
+
+            Map<Integer, List<Model>> modelsByShard = new TreeMap<>();
+            for (Model model : group) {
+                int shard = metadata.shardOfEntity(model);
+                modelsByShard.computeIfAbsent(shard, s -> new ArrayList<>()).add(model);
+            }
+            for (Map.Entry<Integer, List<Model>> shard : modelsByShard.entrySet()) {
+                ShardScope scope = Connection.useShard(shard.getKey());
+                try {
+                    writeChunks(metadata, shard.getValue(), chunkSize, multiRowInsert, updateColumns);
+                } finally {
+                    scope.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts models of the same class in chunks, either as plain inserts or as upserts.
+     *
+     * @param metadata the metadata of the models' class.
+     * @param models the model instances to write.
+     * @param chunkSize the maximum number of rows sent per round trip.
+     * @param multiRowInsert true to send each chunk as one multi-row statement, false to use a JDBC batch.
+     * @param updateColumns the columns to overwrite on conflict, or null for a plain insert.
+     * @throws SQLException if an SQL exception occurs during the insertion.
+     * @throws IllegalAccessException if access to a field is not allowed during reflection.
+     */
+    private static void writeChunks(EntityMetadata<Model> metadata, List<Model> models, int chunkSize, boolean multiRowInsert, String[] updateColumns) throws SQLException, IllegalAccessException {
+        int size = multiRowInsert ? Math.max(1, Math.min(chunkSize, MAX_PLACEHOLDERS / Math.max(1, metadata.getColumns().size()))) : chunkSize;
+        for (int start = 0; start < models.size(); start += size) {
+            List<Model> chunk = models.subList(start, Math.min(start + size, models.size()));
+            int rows = multiRowInsert ? chunk.size() : 1;
+            String sql = updateColumns == null ? metadata.getInsertSql(rows) : metadata.getUpsertSql(rows, updateColumns);
+            if (multiRowInsert) {
+                insertMultiRow(metadata, chunk, sql, updateColumns == null);
+            } else {
+                insertBatch(metadata, chunk, sql, updateColumns == null);
+            }
+        }
+    }
+
+    /**
+     * Inserts a chunk of models as a JDBC batch of a single-row INSERT statement.
+     *
+     * @param metadata the metadata of the models' class.
+     * @param chunk the models to insert.
+     * @param sql the single-row INSERT statement.
+     * @param setIds true to set the generated keys back to the models, false for an upsert.
+     * @throws SQLException if an SQL exception occurs during the insertion.
+     * @throws IllegalAccessException if access to a field is not allowed during reflection.
+     */
+    private static void insertBatch(EntityMetadata<Model> metadata, List<Model> chunk, String sql, boolean setIds) throws SQLException, IllegalAccessException {
+        try (PreparedStatement stmt = Connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            for (Model model : chunk) {
+                metadata.bind(stmt, model, 1);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            if (setIds) {
+                setGeneratedIds(metadata, stmt, chunk);
+                markPersisted(metadata, chunk);
+            } else {
+                markUpserted(metadata, chunk);
+            }
+        }
+    }
+
+    /**
+     * Inserts a chunk of models with a single multi-row INSERT statement.
+     *
+     * @param metadata the metadata of the models' class.
+     * @param chunk the models to insert.
+     * @param sql the INSERT statement with one VALUES row per model.
+     * @param setIds true to set the generated keys back to the models, false for an upsert.
+     * @throws SQLException if an SQL exception occurs during the insertion.
+     * @throws IllegalAccessException if access to a field is not allowed during reflection.
+     */
+    private static void insertMultiRow(EntityMetadata<Model> metadata, List<Model> chunk, String sql, boolean setIds) throws SQLException, IllegalAccessException {
+        try (PreparedStatement stmt = Connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            int index = 1;
+            for (Model model : chunk) {
+                index = metadata.bind(stmt, model, index);
             }
             stmt.executeUpdate();
+            if (setIds) {
+                setGeneratedIds(metadata, stmt, chunk);
+                markPersisted(metadata, chunk);
+            } else {
+                markUpserted(metadata, chunk);
+            }
+        }
+    }
 
-            ResultSet generatedKeys = stmt.getGeneratedKeys();
-            if (generatedKeys.next()) {
-                Field idField = this.getClass().getDeclaredField("id");
-                idField.setAccessible(true);
-                idField.set(this, generatedKeys.getInt(1));
+    /**
+     * Sets the keys generated by an insert statement back to the id field of the inserted models, in order.
+     *
+     * @param metadata the metadata of the models' class.
+     * @param stmt the executed insert statement.
+     * @param chunk the inserted models, in insertion order.
+     * @throws SQLException if the generated keys cannot be read.
+     * @throws IllegalAccessException if access to the id field is not allowed during reflection.
+     */
+    private static void setGeneratedIds(EntityMetadata<Model> metadata, PreparedStatement stmt, List<Model> chunk) throws SQLException, IllegalAccessException {
+        if (metadata.getIdColumn() == null) return;
+
+        try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+            for (Model model : chunk) {
+                if (!generatedKeys.next()) break;
+                metadata.setGeneratedId(model, generatedKeys.getInt(1));
             }
         }
     }
 
+    /**
+     * Records the values of the given models as their last persisted state and evicts their rows from the
+     * second-level and query caches.
+     *
+     * @param metadata the metadata of the models' class.
+     * @param chunk the persisted models.
+     * @throws SQLException if the previous persisted state of a model cannot be read.
+     * @throws IllegalAccessException if access to a field is not allowed during reflection.
+     */
+    private static void markPersisted(EntityMetadata<Model> metadata, List<Model> chunk) throws SQLException, IllegalAccessException {
+        for (Model model : chunk) {
+            model.markPersisted(metadata);
+        }
+    }
+
+    /**
+     * Forgets the persisted state of upserted models, since the rows updated on conflict only took the
+     * overwritten columns and their ids are unknown, and evicts the whole table from the second-level and query caches.
+     *
+     * @param metadata the metadata of the models' class.
+     * @param chunk the upserted models.
+     * @throws SQLException if the previous persisted state of a model cannot be read.
+     */
+    private static void markUpserted(EntityMetadata<Model> metadata, List<Model> chunk) throws SQLException {
+        Runnable eviction = () -> EntityMetadata.evictTable(metadata.getTableName());
+        for (Model model : chunk) {
+            model.markWritten(null, eviction);
+            // The table is evicted once for the whole chunk.
+            eviction = () -> { };
+        }
+    }
+
+    /**
+     * Records the current values of this model as its last persisted state and evicts its row from the
+     * second-level and query caches.
+     *
+     * @param metadata the metadata of this model's class.
+     * @throws SQLException if the previous persisted state cannot be read.
+     * @throws IllegalAccessException if access to a field is not allowed during reflection.
+     */
+    private void markPersisted(EntityMetadata<Model> metadata) throws SQLException, IllegalAccessException {
+        Object[] values = metadata.snapshot(this);
+        Object id = metadata.getIdColumn() != null ? values[metadata.getIdIndex()] : null;
+        markWritten(values, () -> metadata.evict(id));
+    }
+
+    /**
+     * Records the given values as the persisted state of this model after a write, and evicts the written rows.
+     * Inside Connection.inTransaction(), the rows are only evicted once the transaction commits, so that a concurrent
+     * read cannot cache them again as they were before the commit, and the previous persisted state is restored
+     * if the transaction, or the savepoint of the write, is rolled back.
+     *
+     * @param values the persisted column values, or null for a deleted model.
+     * @param eviction evicts the written rows from the second-level and query caches.
+     * @throws SQLException if the previous persisted state cannot be read.
+     */
+    private void markWritten(Object[] values, Runnable eviction) throws SQLException {
+        Transaction transaction = Connection.currentTransaction();
+        if (transaction == null) {
+            markClean(values);
+            eviction.run();
+            return;
+        }
+
+        Object[] previous = getSnapshot();
+        transaction.onRollback(() -> markClean(previous));
+        markClean(values);
+        transaction.afterCommit(eviction);
+    }
 
     /**
      * Updates the current model instance in the database.
-     * Retrieves the table name from the class's @Table annotation.
-     * Maps fields annotated with @Column to corresponding column names and values.
-     * Constructs and executes an SQL UPDATE query to update the model in the table based on its id.
+     * If the model was loaded or written through JDORM, only the columns whose value changed since then are
+     * sent, with an UPDATE statement cached per combination of changed columns, and nothing is sent at all
+     * when no column changed. Otherwise every field annotated with @Column is written, based on its id.
+     * Inside Connection.inTransaction(), the update is queued in a JDBC batch.
+     * If the table is sharded, the row is updated on the shard of its shard key, which cannot be changed.
      *
      * @throws SQLException if an SQL exception occurs during the update operation.
      * @throws IllegalAccessException if access to a field is not allowed during reflection.
+     * @throws IllegalStateException if the shard key of a sharded model changed since it was loaded or written.
      */
     public void update() throws SQLException, IllegalAccessException {
-        Table table = this.getClass().getAnnotation(Table.class);
-        if (table == null) throw new SQLException("Model must have a @Table annotation");
+        EntityMetadata<Model> metadata = metadata();
+        metadata.requireIdColumn();
+        Object[] persisted = getSnapshot();
+        if (metadata.isSharded() && persisted != null) {
+            int key = metadata.getColumns().indexOf(metadata.getShardKey());
+            if (!Objects.equals(persisted[key], metadata.getShardKey().get(this))) {
+                throw new IllegalStateException("The shard key " + metadata.getShardKey().getName() + " of " + getClass().getName()
+                        + " cannot be changed, delete the model and save a new one instead");
+            }
+        }
+        ShardScope scope = shardScope(metadata);
+        try {
+            write(metadata);
+        } finally {
+            if (scope != null) scope.close();
+        }
+    }
+
+    private void write(EntityMetadata<Model> metadata) throws SQLException, IllegalAccessException {
+        Transaction transaction = Connection.currentTransaction();
+        if (transaction != null) {
+            queueUpdate(metadata, transaction);
+            return;
+        }
+        Object[] current = metadata.snapshot(this);
+        Object[] persisted = getSnapshot();
 
-        String tableName = table.name();
-        Map<String, Object> fields = new HashMap<>();
+        if (persisted == null) {
+            try (PreparedStatement stmt = Connection.prepareStatement(metadata.getUpdateSql())) {
+                int i = metadata.bind(stmt, this, 1);
+                metadata.bindId(stmt, this, i);
+                stmt.executeUpdate();
+            }
+        } else {
+            BitSet changed = metadata.changedColumns(persisted, current);
+            if (changed.isEmpty()) return;
 
-        for (Field field : this.getClass().getDeclaredFields()) {
-            if (field.isAnnotationPresent(Column.class)) {
-                Column column = field.getAnnotation(Column.class);
-                field.setAccessible(true);
-                fields.put(column.name(), field.get(this));
+            try (PreparedStatement stmt = Connection.prepareStatement(metadata.getUpdateSql(changed))) {
+                int i = 1;
+                for (int column = changed.nextSetBit(0); column >= 0; column = changed.nextSetBit(column + 1)) {
+                    stmt.setObject(i++, current[column]);
+                }
+                stmt.setObject(i, persisted[metadata.getIdIndex()]);
+                stmt.executeUpdate();
             }
+            metadata.evict(persisted[metadata.getIdIndex()]);
+        }
+        markClean(current);
+        metadata.evict(current[metadata.getIdIndex()]);
+    }
+
+    /**
+     * Queues the update of this model in the batches of the given transaction, with the same statements as update().
+     * A model saved in the same transaction and not flushed yet has no persisted state, so it is updated in full
+     * once the pending insert batch is flushed and its id is known. The queued values become the persisted state
+     * right away, so that a later update() in the transaction only sends the columns changed since.
+     *
+     * @param metadata the metadata of this model's class.
+     * @param transaction the transaction of the current thread.
+     * @throws SQLException if the update cannot be queued.
+     * @throws IllegalAccessException if access to a field is not allowed during reflection.
+     */
+    private void queueUpdate(EntityMetadata<Model> metadata, Transaction transaction) throws SQLException, IllegalAccessException {
+        Object[] current = metadata.snapshot(this);
+        Object[] persisted = getSnapshot();
+        if (persisted == null) {
+            transaction.addBatch(metadata.getUpdateSql(), Statement.NO_GENERATED_KEYS, stmt -> {
+                int i = metadata.bind(stmt, this, 1);
+                metadata.bindId(stmt, this, i);
+            }, keys -> markPersisted(metadata));
+            return;
         }
 
-        String setClause = String.join(", ", fields.keySet().stream().map(k -> k + " = ?").toArray(String[]::new));
-        String sql = "UPDATE " + tableName + " SET " + setClause + " WHERE id = ?";
+        BitSet changed = metadata.changedColumns(persisted, current);
+        if (changed.isEmpty()) return;
 
-        try (PreparedStatement stmt = Connection.getConnection().prepareStatement(sql)) {
+        Object previousId = persisted[metadata.getIdIndex()];
+        transaction.addBatch(metadata.getUpdateSql(changed), Statement.NO_GENERATED_KEYS, stmt -> {
             int i = 1;
-            for (Object value : fields.values()) {
-                stmt.setObject(i++, value);
+            for (int column = changed.nextSetBit(0); column >= 0; column = changed.nextSetBit(column + 1)) {
+                stmt.setObject(i++, current[column]);
             }
-            stmt.setInt(i, (Integer) fields.get("id"));
-            stmt.executeUpdate();
-        }
+            stmt.setObject(i, previousId);
+        }, null);
+        markWritten(current, () -> {
+            metadata.evict(previousId);
+            metadata.evict(current[metadata.getIdIndex()]);
+        });
     }
 
     /**
      * Deletes the current model instance from the database based on its id.
-     * Retrieves the table name from the class's @Table annotation.
-     * Constructs and executes an SQL DELETE query to remove the model from the table.
+     * Executes the pre-rendered DELETE statement of the model's table.
+     * Inside Connection.inTransaction(), the delete is queued in a JDBC batch.
+     * If the table is sharded, the row is deleted on the shard of its shard key.
      *
      * @throws SQLException if an SQL exception occurs during the delete operation.
      * @throws NoSuchFieldException if the id field does not exist in the model class.
      * @throws IllegalAccessException if access to the id field is not allowed during reflection.
      */
     public void delete() throws SQLException, NoSuchFieldException, IllegalAccessException {
-        Table table = this.getClass().getAnnotation(Table.class);
-        if (table == null) throw new SQLException("Model must have a @Table annotation");
+        EntityMetadata<Model> metadata = metadata();
+        if (metadata.getIdColumn() == null) throw new NoSuchFieldException("id");
+        ShardScope scope = shardScope(metadata);
+        try {
+            remove(metadata);
+        } finally {
+            if (scope != null) scope.close();
+        }
+    }
 
-        String tableName = table.name();
-        String sql = "DELETE FROM " + tableName + " WHERE id = ?";
+    private void remove(EntityMetadata<Model> metadata) throws SQLException, IllegalAccessException {
+        Transaction transaction = Connection.currentTransaction();
+        if (transaction != null) {
+            transaction.addBatch(metadata.getDeleteSql(), Statement.NO_GENERATED_KEYS, stmt -> metadata.bindId(stmt, this, 1), keys -> {
+                Object id = metadata.getIdColumn().get(this);
+                markWritten(null, () -> metadata.evict(id));
+            });
+            return;
+        }
 
-        try (PreparedStatement stmt = Connection.getConnection().prepareStatement(sql)) {
-            Field idField = this.getClass().getDeclaredField("id");
-            idField.setAccessible(true);
-            stmt.setInt(1, (int) idField.get(this));
+        try (PreparedStatement stmt = Connection.prepareStatement(metadata.getDeleteSql())) {
+            metadata.bindId(stmt, this, 1);
             stmt.executeUpdate();
         }
+        metadata.evict(metadata.getIdColumn().get(this));
+        markClean(null);
     }
 
     /**
      * Finds a model instance by its ID from the database.
+     * If the model is annotated with @Cacheable, the row is served from the second-level cache when present.
+     * If the table is sharded on its id, the row is read from the shard of the id; if it is sharded on another
+     * column, every shard is searched in parallel.
      *
      * @param id the ID of the model instance to retrieve.
      * @param clazz the class type of the model.
@@ -134,32 +535,258 @@ public abstract class Model {
      * @throws InstantiationException if a specified class object cannot be instantiated.
      */
     public static <T extends Model> T findById(int id, Class<T> clazz) throws SQLException, NoSuchMethodException, IllegalAccessException, InvocationTargetException, InstantiationException {
-        Table table = clazz.getAnnotation(Table.class);
-        if (table == null) throw new SQLException("Model must have a @Table annotation");
+        EntityMetadata<T> metadata = EntityMetadata.of(clazz);
+        metadata.requireIdColumn();
 
-        String tableName = table.name();
-        String sql = "SELECT * FROM " + tableName + " WHERE id = ?";
+        LruCache<Object, Object[]> cache = metadata.getCache();
+        Object cacheKey = EntityMetadata.cacheKey(id);
+        long generation = 0;
+        if (cache != null) {
+            Object[] cached = cache.get(cacheKey);
+            if (cached != null) return metadata.fromSnapshot(cached);
+            generation = cache.generation();
+        }
 
-        try (PreparedStatement stmt = Connection.getConnection().prepareStatement(sql)) {
+        T instance;
+        if (!metadata.isSharded() || Connection.currentShard() >= 0) {
+            instance = selectById(metadata, id);
+        } else if (metadata.getShardKey() == metadata.getIdColumn()) {
+            ShardScope scope = Connection.useShard(metadata.shardOf(id));
+            try {
+                instance = selectById(metadata, id);
+            } finally {
+                scope.close();
+            }
+        } else {
+            instance = selectByIdOnEveryShard(metadata, id);
+        }
+        if (instance != null && cache != null) cache.putIfGeneration(cacheKey, instance.getSnapshot(), generation);
+        return instance;
+    }
+
+    private static <T extends Model> T selectById(EntityMetadata<T> metadata, int id) throws SQLException, NoSuchMethodException, IllegalAccessException, InvocationTargetException, InstantiationException {
+        try (PreparedStatement stmt = Connection.prepareRead(metadata.getSelectByIdSql())) {
             stmt.setInt(1, id);
 
             try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    T instance = clazz.getDeclaredConstructor().newInstance();
-                    for (Field field : clazz.getDeclaredFields()) {
-                        if (field.isAnnotationPresent(Column.class)) {
-                            Column column = field.getAnnotation(Column.class);
-                            field.setAccessible(true);
-                            field.set(instance, rs.getObject(column.name()));
-                        }
-                    }
-                    return instance;
-                }
+                return rs.next() ? metadata.hydrate(rs) : null;
             }
         }
+    }
+
+    private static <T extends Model> T selectByIdOnEveryShard(EntityMetadata<T> metadata, int id) throws SQLException, NoSuchMethodException, IllegalAccessException, InvocationTargetException, InstantiationException {
+        List<T> found;
+        try {
+            found = Connection.onEveryShard(() -> selectById(metadata, id));
+        } catch (SQLException | NoSuchMethodException | IllegalAccessException | InvocationTargetException
+                 | InstantiationException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLException(e.getMessage(), e);
+        }
+        for (T instance : found) {
+            if (instance != null) return instance;
+        }
         return null;
     }
 
+    /**
+     * Same as findById(int, Class), run asynchronously by Connection.supplyAsync().
+     *
+     * @param id The ID of the model instance to find.
+     * @param clazz The class of the model instance.
+     * @return a future of the found model instance, or null if not found.
+     */
+    public static <T extends Model> CompletableFuture<T> findByIdAsync(int id, Class<T> clazz) {
+        return Connection.supplyAsync(() -> findById(id, clazz));
+    }
+
+    /**
+     * Same as save(), run asynchronously by Connection.supplyAsync(), outside the transaction of the calling thread.
+     * The model must not be modified until the future completes.
+     *
+     * @return a future completed once the model is saved
+     */
+    public CompletableFuture<Void> saveAsync() {
+        return Connection.supplyAsync(() -> {
+            save();
+            return null;
+        });
+    }
+
+    /**
+     * Same as update(), run asynchronously by Connection.supplyAsync(), outside the transaction of the calling thread.
+     * The model must not be modified until the future completes.
+     *
+     * @return a future completed once the model is updated
+     */
+    public CompletableFuture<Void> updateAsync() {
+        return Connection.supplyAsync(() -> {
+            update();
+            return null;
+        });
+    }
+
+    /**
+     * Same as delete(), run asynchronously by Connection.supplyAsync(), outside the transaction of the calling thread.
+     *
+     * @return a future completed once the model is deleted
+     */
+    public CompletableFuture<Void> deleteAsync() {
+        return Connection.supplyAsync(() -> {
+            delete();
+            return null;
+        });
+    }
+
+    /**
+     * Same as saveAll(Collection), run asynchronously by Connection.supplyAsync().
+     * The models must not be modified until the future completes.
+     *
+     * @param models the model instances to save.
+     * @return a future completed once the models are saved
+     */
+    public static <T extends Model> CompletableFuture<Void> saveAllAsync(Collection<T> models) {
+        List<T> copy = new ArrayList<>(models);
+        return Connection.supplyAsync(() -> {
+            saveAll(copy);
+            return null;
+        });
+    }
+
+    /**
+     * Returns the counters of the second-level cache of the specified model class.
+     *
+     * @param clazz the class type of the model.
+     * @return the hit, miss and eviction counters of the cache, or null if the model is not annotated with @Cacheable.
+     * @throws SQLException if the model class has no @Table annotation.
+     */
+    public static CacheStats cacheStats(Class<? extends Model> clazz) throws SQLException {
+        LruCache<Object, Object[]> cache = EntityMetadata.of(clazz).getCache();
+        return cache == null ? null : cache.stats();
+    }
+
+    /**
+     * Records the given values as the last persisted state of this model, used by update() to detect changed columns.
+     *
+     * @param values the persisted column values, or null to forget the persisted state.
+     */
+    void markClean(Object[] values) {
+        this.snapshot = values;
+        this.snapshotBits = null;
+    }
+
+    /**
+     * Records the values this model was just hydrated with as its last persisted state, the primitive ones
+     * as raw bits which are only boxed if getSnapshot() is called.
+     *
+     * @param references the values of the object columns, in column order, null for the primitive columns.
+     * @param primitives the raw bits of the primitive columns, or null if the model has none.
+     */
+    void markLoaded(Object[] references, long[] primitives) {
+        this.snapshot = references;
+        this.snapshotBits = primitives;
+    }
+
+    /**
+     * Returns the last persisted state of this model.
+     *
+     * @return the column values recorded when this model was last loaded or written, or null if unknown.
+     * @throws SQLException if the model class has no @Table annotation.
+     */
+    Object[] getSnapshot() throws SQLException {
+        if (snapshotBits != null) {
+            metadata().unpack(snapshot, snapshotBits);
+            snapshotBits = null;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns the value of a relation field, loading it on first access and keeping it for the next ones.
+     * If this model was returned by a query along with other models, the relation is loaded at once for this
+     * model and the next ones of the same result that have not loaded it yet, up to the batch size of the relation,
+     * so that accessing it in a loop over the result costs one query per batch instead of one per model.
+     * Relations loaded eagerly with QueryBuilder.with() are returned without any query.
+     *
+     * @param name the name of a field of this model annotated with @HasMany, @HasOne or @BelongsTo
+     * @param <R> the type of the relation field
+     * @return the related models for @HasMany, or the related model or null otherwise
+     * @throws IllegalArgumentException if this model has no relation with the given name
+     * @throws IllegalStateException if the relation cannot be loaded
+     */
+    @SuppressWarnings("unchecked")
+    protected <R> R relation(String name) {
+        try {
+            EntityMetadata<Model> metadata = metadata();
+            RelationMapping relation = metadata.getRelation(name);
+            if (relation == null) throw new IllegalArgumentException(getClass().getName() + " has no relation named " + name);
+
+            if (!isRelationLoaded(name)) {
+                List<Model> window = siblings != null
+                        ? siblings.window(siblingIndex, name, relation.getBatchSize())
+                        : Collections.singletonList(this);
+                relation.load(metadata, window);
+            }
+            return (R) relation.get(this);
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to load the relation " + name + " of " + getClass().getName(), e);
+        }
+    }
+
+    /**
+     * Records the result set this model was returned in, used to batch the lazy loading of its relations.
+     *
+     * @param group the models of the result set
+     * @param index the position of this model in the result set
+     */
+    void joinSiblings(SiblingGroup group, int index) {
+        this.siblings = group;
+        this.siblingIndex = index;
+    }
+
+    /**
+     * @param name the name of a relation field
+     * @return true if the relation of this model was loaded, eagerly or lazily
+     */
+    boolean isRelationLoaded(String name) {
+        return loadedRelations != null && loadedRelations.contains(name);
+    }
+
+    /**
+     * Records that the given relation of this model was loaded.
+     *
+     * @param name the name of the relation field
+     */
+    void markRelationLoaded(String name) {
+        if (loadedRelations == null) loadedRelations = new HashSet<>(4);
+        loadedRelations.add(name);
+    }
+
+    /**
+     * Binds the current thread to the shard of this model when its table is sharded, so that its write runs there.
+     *
+     * @param metadata the metadata of this model's class.
+     * @return the scope to close once the write is sent, or null if the table is not sharded.
+     * @throws IllegalAccessException if access to the shard key field is not allowed during reflection.
+     */
+    private ShardScope shardScope(EntityMetadata<Model> metadata) throws IllegalAccessException {
+        return metadata.isSharded() ? Connection.useShard(metadata.shardOfEntity(this)) : null;
+    }
+
+    /**
+     * Returns the cached entity metadata of this model's class.
+     *
+     * @return the metadata describing this model
+     * @throws SQLException if the model class has no @Table annotation
+     */
+    @SuppressWarnings("unchecked")
+    private EntityMetadata<Model> metadata() throws SQLException {
+        return (EntityMetadata<Model>) EntityMetadata.of(this.getClass());
+    }
+
     /**
      * Creates a QueryBuilder instance for the specified model class.
      *
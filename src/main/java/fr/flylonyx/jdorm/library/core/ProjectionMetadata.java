@@ -0,0 +1,144 @@
+package fr.flylonyx.jdorm.library.core;
+
+import fr.flylonyx.jdorm.library.annotations.Column;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Mapping information of a record or DTO class used as the target of a QueryBuilder projection,
+ * resolved once per class. Each instance field maps to the column named by its @Column annotation,
+ * or to the snake_case form of its name (firstName reads first_name).
+ * Records are built through their canonical constructor, other classes through their no-argument
+ * constructor followed by field assignments.
+ *
+ * @param <R> the projection type described by this metadata
+ */
+final class ProjectionMetadata<R> {
+    private static final Map<Class<?>, ProjectionMetadata<?>> REGISTRY = new ConcurrentHashMap<>();
+
+    private final String[] columns;
+    private final Field[] fields;
+    private final ValueType[] valueTypes;
+    private final Constructor<R> constructor;
+    private final boolean record;
+    private final String selectList;
+
+    private ProjectionMetadata(Class<R> type) {
+        this.record = type.getSuperclass() != null && type.getSuperclass().getName().equals("java.lang.Record");
+
+        List<Field> mapped = new ArrayList<>();
+        for (Field field : type.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) continue;
+            field.setAccessible(true);
+            mapped.add(field);
+        }
+        if (mapped.isEmpty()) throw new IllegalArgumentException(type.getName() + " has no field to project into");
+
+        this.fields = mapped.toArray(new Field[0]);
+        this.columns = new String[fields.length];
+        this.valueTypes = new ValueType[fields.length];
+        Class<?>[] parameterTypes = new Class<?>[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            Column column = fields[i].getAnnotation(Column.class);
+            columns[i] = column != null ? column.name() : snakeCase(fields[i].getName());
+            valueTypes[i] = ValueType.of(fields[i].getType());
+            parameterTypes[i] = fields[i].getType();
+        }
+        this.selectList = String.join(", ", columns);
+
+        try {
+            this.constructor = record ? type.getDeclaredConstructor(parameterTypes) : type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(type.getName() + (record ? " has no canonical constructor" : " has no no-argument constructor"), e);
+        }
+    }
+
+    /**
+     * Returns the metadata of the given projection class, resolving and caching it on first use.
+     *
+     * @param type the record or DTO class
+     * @return the cached metadata of the class
+     * @throws IllegalArgumentException if the class has no field or no usable constructor
+     */
+    @SuppressWarnings("unchecked")
+    static <R> ProjectionMetadata<R> of(Class<R> type) {
+        return (ProjectionMetadata<R>) REGISTRY.computeIfAbsent(type, ProjectionMetadata::new);
+    }
+
+    /**
+     * @return the comma-separated columns read by the projection, to be used as the SELECT list
+     */
+    String getSelectList() {
+        return selectList;
+    }
+
+    /**
+     * Resolves the index of each projected column in the given result set, once for all its rows.
+     *
+     * @param rs the result set to read
+     * @return the index of each column in the result set, in field order, or 0 for columns not part of the result
+     * @throws SQLException if the result set is closed
+     */
+    int[] columnIndexes(ResultSet rs) throws SQLException {
+        int[] indexes = new int[columns.length];
+        for (int i = 0; i < indexes.length; i++) {
+            try {
+                indexes[i] = rs.findColumn(columns[i]);
+            } catch (SQLException e) {
+                if (rs.isClosed()) throw e;
+                indexes[i] = 0;
+            }
+        }
+        return indexes;
+    }
+
+    /**
+     * Creates a projection instance from the current row of the given result set.
+     * Fields whose column is not part of the result get their default value.
+     *
+     * @param rs      the result set positioned on the row to read
+     * @param indexes the column indexes resolved by columnIndexes(ResultSet)
+     * @return the projection instance
+     * @throws SQLException if a column cannot be read
+     * @throws ReflectiveOperationException if the instance cannot be created or a field cannot be written
+     */
+    R read(ResultSet rs, int[] indexes) throws SQLException, ReflectiveOperationException {
+        if (record) {
+            Object[] arguments = new Object[fields.length];
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = indexes[i] > 0 ? valueTypes[i].read(rs, indexes[i]) : valueTypes[i].defaultValue();
+            }
+            return constructor.newInstance(arguments);
+        }
+
+        R instance = constructor.newInstance();
+        for (int i = 0; i < fields.length; i++) {
+            if (indexes[i] > 0) fields[i].set(instance, valueTypes[i].read(rs, indexes[i]));
+        }
+        return instance;
+    }
+
+    private static String snakeCase(String name) {
+        StringBuilder column = new StringBuilder(name.length() + 4);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c)) {
+                if (i > 0) column.append('_');
+                column.append(Character.toLowerCase(c));
+            } else {
+                column.append(c);
+            }
+        }
+        return column.toString();
+    }
+}
@@ -1,34 +1,79 @@
 package fr.flylonyx.jdorm.library.core;
 
 
-import fr.flylonyx.jdorm.library.annotations.Column;
-import fr.flylonyx.jdorm.library.annotations.Table;
 import fr.flylonyx.jdorm.library.database.Connection;
 import fr.flylonyx.jdorm.library.utils.Operations;
 
-import java.lang.reflect.Field;
 import java.sql.*;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+/**
+ * Builder of SELECT queries and bulk writes on the table of a model.
+ * Each method records its clause in a small clause tree (joins, conditions, groupings, orderings, limits)
+ * rather than appending SQL text, so that clauses can be given in any order; the SQL is rendered once,
+ * in clause order, when the query is executed or compiled into a reusable CompiledQuery.
+ * Queries on a sharded table run on the shards of the shard key values they are restricted to,
+ * or on every shard in parallel with their results merged, see ShardPlan.
+ *
+ * @param <T> the model type queried
+ */
 public class QueryBuilder<T extends Model> {
-    private final Class<T> clazz;
-    private final StringBuilder query;
-    private final List<Object> parameters = new ArrayList<>();
+    private static final int STREAMING_FETCH_SIZE = Integer.MIN_VALUE;
+    private final EntityMetadata<T> metadata;
+    private final List<String> joins = new ArrayList<>();
+    private final List<String> joinedTables = new ArrayList<>();
+    private final List<Condition> conditions = new ArrayList<>();
+    private final List<String> groupColumns = new ArrayList<>();
+    private final List<Condition> havingConditions = new ArrayList<>();
+    private final List<String> orderings = new ArrayList<>();
+    private final List<RelationMapping> eagerRelations = new ArrayList<>();
+    private final List<RelationMapping> fetchJoins = new ArrayList<>();
+    private final List<EntityMetadata<? extends Model>> fetchJoinMetadata = new ArrayList<>();
+    private Integer limit;
+    private Integer offset;
+    private String selectList = "*";
+    private Duration cacheTtl;
 
     /**
      * Constructs a QueryBuilder object for the specified entity class.
      *
      * @param clazz the Class representing the entity for which the query builder is being created
+     * @throws IllegalArgumentException if the class has no @Table annotation
      */
     public QueryBuilder(Class<T> clazz) {
-        this.clazz = clazz;
-        String tableName = clazz.getAnnotation(Table.class).name();
-        this.query = new StringBuilder("SELECT * FROM " + tableName);
+        try {
+            this.metadata = EntityMetadata.of(clazz);
+        } catch (SQLException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
     }
 
 
+    /**
+     * Restricts the columns fetched by the query, instead of every column of the table.
+     * Fields of T whose column is not selected keep their default value.
+     *
+     * @param columns the columns or expressions to select
+     * @return The QueryBuilder instance for method chaining.
+     */
+    public QueryBuilder<T> select(String... columns) {
+        if (columns.length == 0) throw new IllegalArgumentException("At least one column must be selected");
+        this.selectList = String.join(", ", columns);
+        return this;
+    }
+
     /**
      * Adds a WHERE clause to the query with the specified column, operator, and value.
      *
@@ -38,9 +83,8 @@ public class QueryBuilder<T extends Model> {
      * @return The updated QueryBuilder instance with the new WHERE condition added.
      */
     public QueryBuilder<T> where(String column, Operations operator, Object value) {
-        query.append(query.toString().contains(" WHERE ") ? " AND " : " WHERE ")
-                .append(column).append(" ").append(operator.getOperations()).append(" ?");
-        parameters.add(value);
+        conditions.add(new Condition("AND", column + " " + operator.getOperations() + " ?", Collections.singletonList(value),
+                operator == Operations.EQUALS ? column : null));
         return this;
     }
 
@@ -53,8 +97,7 @@ public class QueryBuilder<T extends Model> {
      * @return the query builder instance with the OR condition appended.
      */
     public QueryBuilder<T> orWhere(String column, Operations operator, Object value) {
-        query.append(" OR ").append(column).append(" ").append(operator.getOperations()).append(" ?");
-        parameters.add(value);
+        conditions.add(new Condition("OR", column + " " + operator.getOperations() + " ?", Collections.singletonList(value)));
         return this;
     }
 
@@ -67,10 +110,7 @@ public class QueryBuilder<T extends Model> {
      * @return The QueryBuilder instance for method chaining.
      */
     public QueryBuilder<T> whereBetween(String column, Object min, Object max) {
-        query.append(query.toString().contains(" WHERE ") ? " AND " : " WHERE ")
-                .append(column).append(" BETWEEN ? AND ?");
-        parameters.add(min);
-        parameters.add(max);
+        conditions.add(new Condition("AND", column + " BETWEEN ? AND ?", Arrays.asList(min, max)));
         return this;
     }
 
@@ -82,10 +122,8 @@ public class QueryBuilder<T extends Model> {
      * @return the QueryBuilder instance with the WHERE IN clause added
      */
     public QueryBuilder<T> whereIn(String column, List<Object> values) {
-        String placeholders = values.stream().map(v -> "?").collect(Collectors.joining(", "));
-        query.append(query.toString().contains(" WHERE ") ? " AND " : " WHERE ")
-                .append(column).append(" IN (").append(placeholders).append(")");
-        parameters.addAll(values);
+        String placeholders = String.join(", ", Collections.nCopies(values.size(), "?"));
+        conditions.add(new Condition("AND", column + " IN (" + placeholders + ")", new ArrayList<>(values), column));
         return this;
     }
 
@@ -99,8 +137,8 @@ public class QueryBuilder<T extends Model> {
      * @return the QueryBuilder instance for method chaining
      */
     public QueryBuilder<T> join(String table, String first, Operations operator, String second) {
-        query.append(" JOIN ").append(table)
-                .append(" ON ").append(first).append(" ").append(operator.getOperations()).append(" ").append(second);
+        joins.add(" JOIN " + table + " ON " + first + " " + operator.getOperations() + " " + second);
+        joinedTables.add(table.trim().split("\\s+")[0]);
         return this;
     }
 
@@ -114,8 +152,8 @@ public class QueryBuilder<T extends Model> {
      * @return QueryBuilder instance for method chaining
      */
     public QueryBuilder<T> leftJoin(String table, String first, Operations operator, String second) {
-        query.append(" LEFT JOIN ").append(table)
-                .append(" ON ").append(first).append(" ").append(operator.getOperations()).append(" ").append(second);
+        joins.add(" LEFT JOIN " + table + " ON " + first + " " + operator.getOperations() + " " + second);
+        joinedTables.add(table.trim().split("\\s+")[0]);
         return this;
     }
 
@@ -129,8 +167,8 @@ public class QueryBuilder<T extends Model> {
      * @return the QueryBuilder instance for method chaining
      */
     public QueryBuilder<T> rightJoin(String table, String first, Operations operator, String second) {
-        query.append(" RIGHT JOIN ").append(table)
-                .append(" ON ").append(first).append(" ").append(operator.getOperations()).append(" ").append(second);
+        joins.add(" RIGHT JOIN " + table + " ON " + first + " " + operator.getOperations() + " " + second);
+        joinedTables.add(table.trim().split("\\s+")[0]);
         return this;
     }
 
@@ -141,7 +179,7 @@ public class QueryBuilder<T extends Model> {
      * @return This QueryBuilder instance for method chaining
      */
     public QueryBuilder<T> groupBy(String column) {
-        query.append(" GROUP BY ").append(column);
+        groupColumns.add(column);
         return this;
     }
 
@@ -154,8 +192,7 @@ public class QueryBuilder<T extends Model> {
      * @return The QueryBuilder instance with the HAVING condition applied.
      */
     public QueryBuilder<T> having(String column, Operations operator, Object value) {
-        query.append(" HAVING ").append(column).append(" ").append(operator.getOperations()).append(" ?");
-        parameters.add(value);
+        havingConditions.add(new Condition("AND", column + " " + operator.getOperations() + " ?", Collections.singletonList(value)));
         return this;
     }
 
@@ -166,7 +203,7 @@ public class QueryBuilder<T extends Model> {
      * @return QueryBuilder<T> a reference to this QueryBuilder instance
      */
     public QueryBuilder<T> orderBy(String column) {
-        query.append(" ORDER BY ").append(column);
+        orderings.add(column);
         return this;
     }
 
@@ -177,7 +214,7 @@ public class QueryBuilder<T extends Model> {
      * @return a QueryBuilder instance with the ORDER BY clause appended for descending order
      */
     public QueryBuilder<T> orderByDesc(String column) {
-        query.append(" ORDER BY ").append(column).append(" DESC");
+        orderings.add(column + " DESC");
         return this;
     }
 
@@ -188,7 +225,7 @@ public class QueryBuilder<T extends Model> {
      * @return QueryBuilder instance with the limit clause applied
      */
     public QueryBuilder<T> limit(int limit) {
-        query.append(" LIMIT ").append(limit);
+        this.limit = limit;
         return this;
     }
 
@@ -199,7 +236,100 @@ public class QueryBuilder<T extends Model> {
      * @return QueryBuilder<T> instance with the offset value added to the query
      */
     public QueryBuilder<T> offset(int offset) {
-        query.append(" OFFSET ").append(offset);
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * Pages through the query results with keyset (seek) pagination on the given sort columns.
+     * Instead of skipping rows with OFFSET, each page is filtered on the sort key of the last row of
+     * the previous page, so every page costs the same whatever its depth.
+     * The sort columns must be @Column fields of T, be part of the selected columns and together be unique,
+     * such as the id; the query must not be grouped, ordered or limited.
+     *
+     * @param columns the columns to sort and seek on, in order
+     * @return the paginator, to be configured and iterated page by page
+     * @throws IllegalArgumentException if a column is not a @Column field of T
+     * @throws IllegalStateException if the query is already grouped, ordered, limited or fetch joined
+     */
+    public KeysetPaginator<T> paginateBy(String... columns) {
+        if (columns.length == 0) throw new IllegalArgumentException("At least one sort column is required");
+        if (!fetchJoins.isEmpty()) throw new IllegalStateException("Keyset pagination cannot be combined with fetchJoin()");
+        if (!groupColumns.isEmpty() || !havingConditions.isEmpty() || !orderings.isEmpty() || limit != null || offset != null) {
+            throw new IllegalStateException("Keyset pagination cannot be applied to a grouped, ordered or limited query");
+        }
+
+        EntityMetadata.ColumnMapping[] keys = new EntityMetadata.ColumnMapping[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            keys[i] = metadata.getColumn(columns[i]);
+            if (keys[i] == null) throw new IllegalArgumentException(columns[i] + " is not a @Column field of " + metadata.getType().getName());
+        }
+        return new KeysetPaginator<>(this, columns, keys);
+    }
+
+    /**
+     * Eager loads the given relations of the models returned by the query. Each relation is loaded for
+     * the whole result with one WHERE ... IN (...) query per chunk of 1000 keys, instead of one query per model.
+     *
+     * @param relations the names of fields of T annotated with @HasMany, @HasOne or @BelongsTo
+     * @return The QueryBuilder instance for method chaining.
+     * @throws IllegalArgumentException if T has no relation with one of the given names
+     */
+    public QueryBuilder<T> with(String... relations) {
+        for (String name : relations) {
+            RelationMapping relation = metadata.getRelation(name);
+            if (relation == null) throw new IllegalArgumentException(metadata.getType().getName() + " has no relation named " + name);
+            eagerRelations.add(relation);
+        }
+        return this;
+    }
+
+    /**
+     * Loads the given relations in the same query as the models, with a LEFT JOIN on each related table.
+     * Every column is selected under a per-table label, the models and their related models are hydrated
+     * from each row, and the rows repeating a model are merged into a single object graph.
+     * Both the model and the related models must have an id. Conditions on a column name shared by
+     * several tables must qualify it with the table name, and LIMIT applies to the joined rows.
+     *
+     * @param relations the names of fields of T annotated with @HasMany, @HasOne or @BelongsTo
+     * @return The QueryBuilder instance for method chaining.
+     * @throws IllegalArgumentException if T has no relation with one of the given names,
+     *                                  or if T or the related model has no id
+     */
+    public QueryBuilder<T> fetchJoin(String... relations) {
+        if (metadata.getIdColumn() == null) throw new IllegalArgumentException(metadata.getType().getName() + " has no id to merge joined rows on");
+        for (String name : relations) {
+            RelationMapping relation = metadata.getRelation(name);
+            if (relation == null) throw new IllegalArgumentException(metadata.getType().getName() + " has no relation named " + name);
+
+            EntityMetadata<? extends Model> related;
+            try {
+                related = EntityMetadata.of(relation.getTarget());
+            } catch (SQLException e) {
+                throw new IllegalArgumentException(e.getMessage(), e);
+            }
+            if (related.getIdColumn() == null) throw new IllegalArgumentException(relation.getTarget().getName() + " has no id to merge joined rows on");
+
+            String alias = "t" + (fetchJoins.size() + 1);
+            joins.add(" LEFT JOIN " + related.getTableName() + " " + alias
+                    + " ON " + metadata.getTableName() + "." + relation.getSourceColumn() + " = " + alias + "." + relation.getTargetColumn());
+            joinedTables.add(related.getTableName());
+            fetchJoins.add(relation);
+            fetchJoinMetadata.add(related);
+        }
+        return this;
+    }
+
+    /**
+     * Caches the results of this query in the shared QueryCache for the given duration.
+     * Repeated executions with the same SQL and parameters are served from the cache until it expires
+     * or until a write through Model or QueryBuilder touches the queried table or a joined table.
+     *
+     * @param ttl how long the results stay cached
+     * @return the QueryBuilder instance for method chaining
+     */
+    public QueryBuilder<T> cached(Duration ttl) {
+        this.cacheTtl = ttl;
         return this;
     }
 
@@ -215,36 +345,893 @@ public class QueryBuilder<T extends Model> {
         return results.isEmpty() ? null : results.get(0);
     }
 
+    /**
+     * Same as first(), run asynchronously by Connection.supplyAsync(). The query is compiled before this method
+     * returns, so the builder can be reused right away.
+     *
+     * @return a future of the first element from the query result or null if the result is empty
+     */
+    public CompletableFuture<T> firstAsync() {
+        CompiledQuery<T> query = limit(1).compile();
+        return Connection.supplyAsync(query::first);
+    }
+
+    /**
+     * Counts the rows matched by the query on the database side, without fetching them.
+     * For a grouped or limited query, the number of resulting rows (e.g. groups) is counted.
+     * On several shards, the counts of the shards are added up, then the offset and limit are applied to the total.
+     *
+     * @return the number of rows matched by the query
+     * @throws SQLException if an error occurs during query execution
+     * @throws IllegalStateException if a grouped query must be scattered to several shards
+     */
+    public long count() throws SQLException {
+        return countQuery().run();
+    }
+
+    /**
+     * Checks on the database side whether the query matches at least one row, without fetching it.
+     *
+     * @return true if the query matches at least one row
+     * @throws SQLException if an error occurs during query execution
+     */
+    public boolean exists() throws SQLException {
+        return existsQuery().run();
+    }
+
+    private RenderedQuery<Long> countQuery() {
+        boolean wrapped = !groupColumns.isEmpty() || limit != null || offset != null;
+        String sql = wrapped ? "SELECT COUNT(*) FROM (" + selectSql("1") + ") counted" : selectSql("COUNT(*)");
+        List<Object> values = parameters();
+        ShardPlan<T> plan = shardPlan(groupColumns.isEmpty() ? null : "the groups of the shards cannot be counted");
+        if (plan == null) return () -> ((Number) scalar(sql, values)).longValue();
+
+        String shardSql = selectSql("COUNT(*)", null, null);
+        long skip = offset == null ? 0 : offset;
+        Integer max = limit;
+        return () -> {
+            int[] shards = plan.route(values);
+            if (shards == null || shards.length == 1) {
+                return ShardPlan.onShard(shards == null ? -1 : shards[0], () -> ((Number) scalar(sql, values)).longValue());
+            }
+            long total = ShardPlan.sum(ShardPlan.onShards(shards, () -> scalar(shardSql, values))).longValue();
+            total = Math.max(0, total - skip);
+            return max == null ? total : Math.min(max, total);
+        };
+    }
+
+    private RenderedQuery<Boolean> existsQuery() {
+        String sql = "SELECT EXISTS(" + selectSql("1") + ")";
+        List<Object> values = parameters();
+        ShardPlan<T> plan = shardPlan(offset == null ? null : "the offset applies to the rows of every shard");
+        if (plan == null) return () -> ((Number) scalar(sql, values)).intValue() != 0;
+
+        return () -> {
+            int[] shards = plan.route(values);
+            if (shards == null) return ((Number) scalar(sql, values)).intValue() != 0;
+            for (Object exists : ShardPlan.onShards(shards, () -> scalar(sql, values))) {
+                if (((Number) exists).intValue() != 0) return true;
+            }
+            return false;
+        };
+    }
+
+    /**
+     * Same as count(), run asynchronously by Connection.supplyAsync().
+     * The SQL is rendered before this method returns, so the builder can be reused right away.
+     *
+     * @return a future of the number of rows matched by the query
+     */
+    public CompletableFuture<Long> countAsync() {
+        RenderedQuery<Long> query = countQuery();
+        return Connection.supplyAsync(query::run);
+    }
+
+    /**
+     * Same as exists(), run asynchronously by Connection.supplyAsync().
+     * The SQL is rendered before this method returns, so the builder can be reused right away.
+     *
+     * @return a future of true if the query matches at least one row
+     */
+    public CompletableFuture<Boolean> existsAsync() {
+        RenderedQuery<Boolean> query = existsQuery();
+        return Connection.supplyAsync(query::run);
+    }
+
+    /**
+     * @param column the column or expression to sum
+     * @return the sum of the column over the rows matched by the query, or null if no row matches
+     * @throws SQLException if an error occurs during query execution
+     * @throws IllegalStateException if the query is grouped, see sumByGroup(String)
+     */
+    public Number sum(String column) throws SQLException {
+        return aggregate("SUM", column);
+    }
+
+    /**
+     * @param column the column or expression to average
+     * @return the average of the column over the rows matched by the query, or null if no row matches
+     * @throws SQLException if an error occurs during query execution
+     * @throws IllegalStateException if the query is grouped, see avgByGroup(String)
+     */
+    public Number avg(String column) throws SQLException {
+        return aggregate("AVG", column);
+    }
+
+    /**
+     * @param column the column or expression to get the minimum of
+     * @return the minimum of the column over the rows matched by the query, or null if no row matches
+     * @throws SQLException if an error occurs during query execution
+     * @throws IllegalStateException if the query is grouped, see minByGroup(String)
+     */
+    public Number min(String column) throws SQLException {
+        return aggregate("MIN", column);
+    }
+
+    /**
+     * @param column the column or expression to get the maximum of
+     * @return the maximum of the column over the rows matched by the query, or null if no row matches
+     * @throws SQLException if an error occurs during query execution
+     * @throws IllegalStateException if the query is grouped, see maxByGroup(String)
+     */
+    public Number max(String column) throws SQLException {
+        return aggregate("MAX", column);
+    }
+
+    /**
+     * Counts the rows of each group of a query grouped with groupBy(), honoring its HAVING and ORDER BY clauses.
+     *
+     * @param <K> the type of the grouped column
+     * @return the number of rows of each group, keyed by the value of the grouped column, in result order
+     * @throws SQLException if an error occurs during query execution
+     * @throws IllegalStateException if the query is not grouped
+     */
+    public <K> Map<K, Number> countByGroup() throws SQLException {
+        return aggregateByGroup("COUNT", "*");
+    }
+
+    /**
+     * @param column the column or expression to sum
+     * @param <K> the type of the grouped column
+     * @return the sum of the column for each group, keyed by the value of the grouped column, in result order
+     * @throws SQLException if an error occurs during query execution
+     * @throws IllegalStateException if the query is not grouped
+     */
+    public <K> Map<K, Number> sumByGroup(String column) throws SQLException {
+        return aggregateByGroup("SUM", column);
+    }
+
+    /**
+     * @param column the column or expression to average
+     * @param <K> the type of the grouped column
+     * @return the average of the column for each group, keyed by the value of the grouped column, in result order
+     * @throws SQLException if an error occurs during query execution
+     * @throws IllegalStateException if the query is not grouped
+     */
+    public <K> Map<K, Number> avgByGroup(String column) throws SQLException {
+        return aggregateByGroup("AVG", column);
+    }
+
+    /**
+     * @param column the column or expression to get the minimum of
+     * @param <K> the type of the grouped column
+     * @return the minimum of the column for each group, keyed by the value of the grouped column, in result order
+     * @throws SQLException if an error occurs during query execution
+     * @throws IllegalStateException if the query is not grouped
+     */
+    public <K> Map<K, Number> minByGroup(String column) throws SQLException {
+        return aggregateByGroup("MIN", column);
+    }
+
+    /**
+     * @param column the column or expression to get the maximum of
+     * @param <K> the type of the grouped column
+     * @return the maximum of the column for each group, keyed by the value of the grouped column, in result order
+     * @throws SQLException if an error occurs during query execution
+     * @throws IllegalStateException if the query is not grouped
+     */
+    public <K> Map<K, Number> maxByGroup(String column) throws SQLException {
+        return aggregateByGroup("MAX", column);
+    }
+
+    /**
+     * Computes an aggregate function over every row matched by the ungrouped query.
+     * On several shards, the function is computed on each shard in parallel and the partial results are combined:
+     * sums are added up, the extreme minimum or maximum is kept, and averages divide the total sum by the total count.
+     *
+     * @param function the SQL aggregate function
+     * @param column   the column or expression to aggregate
+     * @return the aggregated value, or null if no row matches
+     * @throws SQLException if an error occurs during query execution
+     */
+    private Number aggregate(String function, String column) throws SQLException {
+        if (!groupColumns.isEmpty()) {
+            throw new IllegalStateException("The query is grouped, use " + function.toLowerCase() + "ByGroup() instead");
+        }
+        String sql = selectSql(function + "(" + column + ")");
+        List<Object> values = parameters();
+        ShardPlan<T> plan = shardPlan(null);
+        int[] shards = plan == null ? null : plan.route(values);
+        if (shards == null || shards.length == 1) {
+            return ShardPlan.onShard(shards == null ? -1 : shards[0], () -> (Number) scalar(sql, values));
+        }
+
+        if (function.equals("AVG")) {
+            String partialSql = selectSql("SUM(" + column + "), COUNT(" + column + ")", null, null);
+            return ShardPlan.average(ShardPlan.onShards(shards, () -> row(partialSql, values)));
+        }
+        String partialSql = selectSql(function + "(" + column + ")", null, null);
+        List<Object> partials = ShardPlan.onShards(shards, () -> scalar(partialSql, values));
+        return function.equals("SUM") ? ShardPlan.sum(partials) : ShardPlan.extreme(partials, function.equals("MAX"));
+    }
+
+    /**
+     * Computes an aggregate function for each group of the grouped query.
+     *
+     * @param function the SQL aggregate function
+     * @param column   the column or expression to aggregate
+     * @param <K> the type of the grouped column
+     * @return the aggregated value of each group, keyed by the value of the grouped column, in result order
+     * @throws SQLException if an error occurs during query execution
+     */
+    @SuppressWarnings("unchecked")
+    private <K> Map<K, Number> aggregateByGroup(String function, String column) throws SQLException {
+        if (groupColumns.size() != 1) throw new IllegalStateException("The query must be grouped on a single column with groupBy()");
+
+        String sql = selectSql(groupColumns.get(0) + ", " + function + "(" + column + ")");
+        List<Object> values = parameters();
+        return ShardPlan.onShard(singleShard(values, function.toLowerCase() + "ByGroup()"), () -> {
+            Map<K, Number> results = new LinkedHashMap<>();
+            try (PreparedStatement stmt = Connection.prepareRead(sql)) {
+                bind(stmt, values);
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        results.put((K) rs.getObject(1), (Number) rs.getObject(2));
+                    }
+                }
+            }
+            return results;
+        });
+    }
+
+    /**
+     * Runs a query returning a single value.
+     *
+     * @param sql    the SQL of the query
+     * @param values the values bound to the placeholders
+     * @return the value of the first column of the first row, or null if it is SQL NULL
+     * @throws SQLException if an error occurs during query execution
+     */
+    private static Object scalar(String sql, List<Object> values) throws SQLException {
+        try (PreparedStatement stmt = Connection.prepareRead(sql)) {
+            bind(stmt, values);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getObject(1) : null;
+            }
+        }
+    }
+
+    /**
+     * Same as scalar(String, List) for a query returning a single row of several values.
+     *
+     * @return the values of the first row, or an array of nulls if the query returns no row
+     */
+    private static Object[] row(String sql, List<Object> values) throws SQLException {
+        try (PreparedStatement stmt = Connection.prepareRead(sql)) {
+            bind(stmt, values);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                Object[] row = new Object[rs.getMetaData().getColumnCount()];
+                if (rs.next()) {
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = rs.getObject(i + 1);
+                    }
+                }
+                return row;
+            }
+        }
+    }
+
     /**
      * Executes the query and maps the result set to a list of objects of type T.
-     * Uses the class type T to create instances, retrieves fields annotated with @Column,
-     * and maps the database values to the corresponding fields.
+     * Uses the cached entity metadata of T to create instances and map the database values
+     * to the fields annotated with @Column. If the query is cached, the results come from the QueryCache when valid.
      *
      * @return List of objects of type T from the query result set.
      * @throws Exception if an error occurs during query execution or object instantiation.
      */
     public List<T> execute() throws Exception {
-        List<T> results = new ArrayList<>();
-        try (PreparedStatement stmt = Connection.getConnection().prepareStatement(query.toString())) {
-            for (int i = 0; i < parameters.size(); i++) {
-                stmt.setObject(i + 1, parameters.get(i));
+        return compile().execute();
+    }
+
+    /**
+     * Same as execute(), run asynchronously by Connection.supplyAsync(). The query is compiled before this method
+     * returns, so the builder can be reused right away.
+     *
+     * @return a future of the list of objects of type T from the query result set
+     */
+    public CompletableFuture<List<T>> executeAsync() {
+        return compile().executeAsync();
+    }
+
+    /**
+     * Renders the query once into an immutable CompiledQuery, to be executed any number of times, from any thread,
+     * with the values given to this builder or with new values bound to the same placeholders.
+     * Later changes to this builder do not affect the compiled query.
+     *
+     * @return the compiled query
+     * @throws IllegalStateException if select() is combined with fetchJoin()
+     */
+    public CompiledQuery<T> compile() {
+        String columns = selectList;
+        if (!fetchJoins.isEmpty()) {
+            if (!selectList.equals("*")) throw new IllegalStateException("select() cannot be combined with fetchJoin()");
+            StringBuilder aliased = new StringBuilder(metadata.getAliasedColumns(metadata.getTableName(), joinPrefix(0)));
+            for (int j = 0; j < fetchJoins.size(); j++) {
+                aliased.append(", ").append(fetchJoinMetadata.get(j).getAliasedColumns("t" + (j + 1), joinPrefix(j + 1)));
             }
+            columns = aliased.toString();
+        }
 
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    T instance = clazz.getDeclaredConstructor().newInstance();
-                    for (Field field : clazz.getDeclaredFields()) {
-                        if (field.isAnnotationPresent(Column.class)) {
-                            Column column = field.getAnnotation(Column.class);
-                            field.setAccessible(true);
-                            field.set(instance, rs.getObject(column.name()));
-                        }
+        ShardPlan<T> plan = null;
+        if (metadata.getShardKey() != null) {
+            String unsupported = null;
+            if (!groupColumns.isEmpty() || !havingConditions.isEmpty()) {
+                unsupported = "the groups of the shards cannot be merged";
+            } else if (!fetchJoins.isEmpty() && (limit != null || offset != null)) {
+                unsupported = "the joined rows of a limited fetchJoin() query cannot be merged";
+            }
+            plan = new ShardPlan<>(metadata, shardKeyParameters(), unsupported, scatterSql(columns),
+                    orderings, selectList, offset, limit);
+        }
+
+        List<Object> values = parameters();
+        return new CompiledQuery<>(metadata, selectSql(columns), values, values.size(), queriedTables(),
+                cacheTtl, eagerRelations, fetchJoins, fetchJoinMetadata, plan);
+    }
+
+    /**
+     * Compiles the query of a keyset pagination page: the rows in sort order, up to the page size,
+     * and for the pages after the first, whose sort key comes after the values bound to the last placeholders.
+     *
+     * @param columns    the sort columns
+     * @param descending whether the rows are sorted in descending order
+     * @param pageSize   the maximum number of rows of a page
+     * @param seek       false for the first page, true for the next pages
+     * @return the compiled page query, whose next-page form takes the conditions values followed by the sort key
+     */
+    CompiledQuery<T> compilePage(String[] columns, boolean descending, int pageSize, boolean seek) {
+        StringBuilder sql = new StringBuilder("SELECT ").append(selectList).append(" FROM ");
+        renderFrom(sql);
+        if (seek) {
+            String placeholders = String.join(", ", Collections.nCopies(columns.length, "?"));
+            sql.append(" WHERE ");
+            if (!conditions.isEmpty()) {
+                sql.append("(");
+                renderConditions(sql, conditions);
+                sql.append(") AND ");
+            }
+            sql.append("(").append(String.join(", ", columns)).append(descending ? ") < (" : ") > (").append(placeholders).append(")");
+        } else if (!conditions.isEmpty()) {
+            sql.append(" WHERE ");
+            renderConditions(sql, conditions);
+        }
+
+        String direction = descending ? " DESC" : "";
+        sql.append(" ORDER BY ").append(String.join(direction + ", ", columns)).append(direction)
+                .append(" LIMIT ").append(pageSize);
+
+        ShardPlan<T> plan = null;
+        if (metadata.getShardKey() != null) {
+            List<String> pageOrderings = new ArrayList<>(columns.length);
+            for (String column : columns) {
+                pageOrderings.add(column + direction);
+            }
+            plan = new ShardPlan<>(metadata, shardKeyParameters(), null, sql.toString(), pageOrderings, selectList, null, pageSize);
+        }
+
+        List<Object> values = parameters();
+        return new CompiledQuery<>(metadata, sql.toString(), values, values.size() + (seek ? columns.length : 0), queriedTables(),
+                null, eagerRelations, Collections.emptyList(), Collections.emptyList(), plan);
+    }
+
+    /**
+     * Executes the query and returns its rows as a lazily hydrated stream, one row at a time.
+     * The driver streams the result instead of buffering it, so memory stays flat whatever the number of rows.
+     * The statement and result set stay open until the stream is closed, which must be done with try-with-resources.
+     * While the stream is open, no other statement can be run on the connection. The QueryCache is not used.
+     *
+     * @return a stream of objects of type T, to be closed once consumed
+     * @throws SQLException if an error occurs during query execution
+     * @throws IllegalStateException if the query eager loads relations with with() or fetchJoin()
+     */
+    public Stream<T> stream() throws SQLException {
+        PreparedStatement stmt = prepareStreaming("stream()");
+        ResultSet rs;
+        int[] indexes;
+        try {
+            rs = stmt.executeQuery();
+            indexes = metadata.columnIndexes(rs);
+        } catch (SQLException e) {
+            stmt.close();
+            throw e;
+        }
+
+        Spliterator<T> rows = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                try {
+                    if (!rs.next()) return false;
+                    action.accept(metadata.hydrate(rs, indexes));
+                    return true;
+                } catch (SQLException | ReflectiveOperationException e) {
+                    throw new IllegalStateException("Unable to read the next row of the query", e);
+                }
+            }
+        };
+
+        return StreamSupport.stream(rows, false).onClose(() -> {
+            try {
+                try {
+                    rs.close();
+                } finally {
+                    stmt.close();
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException("Unable to close the query statement", e);
+            }
+        });
+    }
+
+    /**
+     * Returns a publisher of the rows of the query, read from a streaming result set only as its subscribers
+     * request them, so rows can be pushed to a slow consumer with a bounded buffer and no intermediate list.
+     * Each subscription runs the query on its own statement, which is closed once every row has been
+     * delivered, on error, or when the subscription is cancelled. The SQL is rendered before this method returns.
+     * The QueryCache is not used.
+     *
+     * @return a publisher of objects of type T
+     * @throws IllegalStateException if the query eager loads relations with with() or fetchJoin()
+     */
+    public RowPublisher<T> publish() {
+        checkStreamable("publish()");
+        List<Object> values = parameters();
+        int shard = singleShard(values, "publish()");
+        return new RowPublisher<>(metadata, selectSql(selectList), values, shard < 0 ? Connection.currentShard() : shard);
+    }
+
+    /**
+     * Executes the query and passes each row to the given action as soon as it is read, in the same
+     * streaming mode as stream(). The statement is closed once every row has been consumed or the action fails.
+     *
+     * @param action the action to run on each object of type T
+     * @throws Exception if an error occurs during query execution or object instantiation.
+     * @throws IllegalStateException if the query eager loads relations with with() or fetchJoin()
+     */
+    public void forEach(Consumer<T> action) throws Exception {
+        try (PreparedStatement stmt = prepareStreaming("forEach()");
+             ResultSet rs = stmt.executeQuery()) {
+            int[] indexes = metadata.columnIndexes(rs);
+            while (rs.next()) {
+                action.accept(metadata.hydrate(rs, indexes));
+            }
+        }
+    }
+
+    /**
+     * Prepares the query as a forward-only, read-only statement with MySQL's streaming fetch size,
+     * so that rows are read from the server one at a time instead of being loaded all at once.
+     * On a sharded table, the statement is prepared on the single shard the query is routed to.
+     *
+     * @param operation the name of the streaming operation, for the error message
+     * @return the bound statement
+     * @throws SQLException if the statement cannot be prepared or bound
+     * @throws IllegalStateException if the query must be scattered to several shards or eager loads relations
+     */
+    private PreparedStatement prepareStreaming(String operation) throws SQLException {
+        checkStreamable(operation);
+        String sql = selectSql(selectList);
+        List<Object> values = parameters();
+        return ShardPlan.onShard(singleShard(values, operation), () -> prepareStreaming(sql, values));
+    }
+
+    /**
+     * Rejects the streaming of a query that eager loads relations: rows are handed out one at a time,
+     * so neither the related models of the whole result nor the joined rows of a model can be gathered.
+     *
+     * @param operation the name of the streaming operation, for the error message
+     * @throws IllegalStateException if with() or fetchJoin() was used on the query
+     */
+    private void checkStreamable(String operation) {
+        if (!eagerRelations.isEmpty() || !fetchJoins.isEmpty()) {
+            throw new IllegalStateException(operation + " cannot be combined with with() or fetchJoin(), use get() instead");
+        }
+    }
+
+    /**
+     * Same as prepareStreaming() for the given SQL and values, rendered beforehand.
+     *
+     * @param sql    the SQL of the query
+     * @param values the values bound to the placeholders
+     * @return the bound statement
+     * @throws SQLException if the statement cannot be prepared or bound
+     */
+    static PreparedStatement prepareStreaming(String sql, List<Object> values) throws SQLException {
+        PreparedStatement stmt = Connection.prepareRead(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        try {
+            stmt.setFetchSize(STREAMING_FETCH_SIZE);
+            bind(stmt, values);
+        } catch (SQLException e) {
+            stmt.close();
+            throw e;
+        }
+        return stmt;
+    }
+
+    /**
+     * Executes the query and maps each row to an instance of the given record or DTO class instead of T.
+     * Each field of the class reads the column named by its @Column annotation, or the snake_case form of its name.
+     * Unless select() was called, only the columns of the class are fetched.
+     *
+     * @param type the record or DTO class to project rows into
+     * @param <R> the projection type
+     * @return List of projections from the query result set.
+     * @throws Exception if an error occurs during query execution or object instantiation.
+     */
+    public <R> List<R> selectAs(Class<R> type) throws Exception {
+        ProjectionMetadata<R> projection = ProjectionMetadata.of(type);
+        String columns = selectList.equals("*") ? projection.getSelectList() : selectList;
+        String sql = selectSql(columns);
+        List<Object> values = parameters();
+
+        return ShardPlan.onShard(singleShard(values, "selectAs()"), () -> {
+            List<R> results = new ArrayList<>();
+            try (PreparedStatement stmt = Connection.prepareRead(sql)) {
+                bind(stmt, values);
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    int[] indexes = projection.columnIndexes(rs);
+                    while (rs.next()) {
+                        results.add(projection.read(rs, indexes));
                     }
-                    results.add(instance);
                 }
             }
+            return results;
+        });
+    }
+
+    /**
+     * @return the queried table followed by every joined table
+     */
+    private List<String> queriedTables() {
+        List<String> tables = new ArrayList<>(joinedTables.size() + 1);
+        tables.add(metadata.getTableName());
+        tables.addAll(joinedTables);
+        return tables;
+    }
+
+    /**
+     * Deletes every row matching the conditions of this query with a single DELETE statement,
+     * without loading the rows.
+     *
+     * @return the number of rows deleted
+     * @throws SQLException if an error occurs during statement execution
+     * @throws IllegalStateException if the query is grouped or has an offset, or is ordered or limited with joins
+     */
+    public int delete() throws SQLException {
+        checkWriteClauses("DELETE");
+        StringBuilder sql = new StringBuilder(joins.isEmpty() ? "DELETE FROM " : "DELETE " + metadata.getTableName() + " FROM ");
+        renderFrom(sql);
+        renderWriteClauses(sql);
+        return executeUpdate(sql.toString(), parameters());
+    }
+
+    /**
+     * Updates the given columns of every row matching the conditions of this query with a single UPDATE statement,
+     * without loading the rows.
+     *
+     * @param values the new values, keyed by column name
+     * @return the number of rows updated
+     * @throws SQLException if an error occurs during statement execution
+     * @throws IllegalStateException if the query is grouped or has an offset, or is ordered or limited with joins
+     */
+    public int update(Map<String, Object> values) throws SQLException {
+        if (values.isEmpty()) throw new IllegalArgumentException("At least one column must be updated");
+        checkWriteClauses("UPDATE");
+
+        StringBuilder setClause = new StringBuilder();
+        List<Object> updateParameters = new ArrayList<>(values.size() + conditions.size());
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            if (setClause.length() > 0) setClause.append(", ");
+            setClause.append(entry.getKey()).append(" = ?");
+            updateParameters.add(entry.getValue());
+        }
+        updateParameters.addAll(parameters());
+        return executeUpdate(updateSql(setClause), updateParameters);
+    }
+
+    /**
+     * Adds the given delta to a numeric column of every row matching the conditions of this query
+     * with a single UPDATE statement, without loading the rows.
+     *
+     * @param column the column to increment
+     * @param delta  the amount to add, which can be negative
+     * @return the number of rows updated
+     * @throws SQLException if an error occurs during statement execution
+     * @throws IllegalStateException if the query is grouped or has an offset, or is ordered or limited with joins
+     */
+    public int increment(String column, Number delta) throws SQLException {
+        checkWriteClauses("UPDATE");
+        List<Object> updateParameters = new ArrayList<>(conditions.size() + 1);
+        updateParameters.add(delta);
+        updateParameters.addAll(parameters());
+        return executeUpdate(updateSql(new StringBuilder(column).append(" = ").append(column).append(" + ?")), updateParameters);
+    }
+
+    /**
+     * Builds an UPDATE statement placing the SET clause between the table references and the conditions of this query.
+     *
+     * @param setClause the rendered assignments of the SET clause
+     * @return the UPDATE statement
+     */
+    private String updateSql(CharSequence setClause) {
+        StringBuilder sql = new StringBuilder("UPDATE ");
+        renderFrom(sql);
+        sql.append(" SET ").append(setClause);
+        renderWriteClauses(sql);
+        return sql.toString();
+    }
+
+    /**
+     * Checks that the clauses of this query can be rendered in a DELETE or UPDATE statement: MySQL rejects
+     * GROUP BY, HAVING and OFFSET there, and ORDER BY and LIMIT in statements on several tables.
+     *
+     * @param statement the kind of statement, for the error message
+     * @throws IllegalStateException if the query has a clause the statement cannot hold
+     */
+    private void checkWriteClauses(String statement) {
+        if (!groupColumns.isEmpty() || !havingConditions.isEmpty()) {
+            throw new IllegalStateException("A " + statement + " statement cannot be grouped with groupBy() or having()");
+        }
+        if (offset != null) throw new IllegalStateException("A " + statement + " statement cannot skip rows with offset()");
+        if (!joins.isEmpty() && (!orderings.isEmpty() || limit != null)) {
+            throw new IllegalStateException("A " + statement + " statement on joined tables cannot be ordered or limited");
         }
+    }
 
-        return results;
+    /**
+     * Executes a data modification statement with the given parameters, then clears the second-level and query
+     * caches of the queried table and of every joined table.
+     * On a sharded table, the statement runs on the shards of the shard key values of the conditions,
+     * or on every shard in parallel, and the affected rows of the shards are added up.
+     *
+     * @param sql        the statement to execute
+     * @param parameters the values bound to the statement placeholders, in order
+     * @return the number of affected rows
+     * @throws SQLException if an error occurs during statement execution
+     * @throws IllegalStateException if a limited statement must be scattered to several shards
+     */
+    private int executeUpdate(String sql, List<Object> parameters) throws SQLException {
+        ShardPlan<T> plan = shardPlan(limit == null && offset == null ? null : "the limit applies to the rows of every shard");
+        int[] shards = plan == null ? null : plan.route(parameters());
+        try {
+            if (shards == null) return executeUpdateOnPool(sql, parameters);
+            return ShardPlan.sum(ShardPlan.onShards(shards, () -> executeUpdateOnPool(sql, parameters))).intValue();
+        } finally {
+            for (String table : queriedTables()) {
+                EntityMetadata.evictTable(table);
+            }
+        }
+    }
+
+    private static int executeUpdateOnPool(String sql, List<Object> parameters) throws SQLException {
+        try (PreparedStatement stmt = Connection.prepareStatement(sql)) {
+            bind(stmt, parameters);
+            return stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Binds the given values to the statement placeholders, in order.
+     *
+     * @param stmt       the statement to bind
+     * @param parameters the values to bind
+     * @throws SQLException if a value cannot be bound
+     */
+    static void bind(PreparedStatement stmt, List<Object> parameters) throws SQLException {
+        for (int i = 0; i < parameters.size(); i++) {
+            stmt.setObject(i + 1, parameters.get(i));
+        }
+    }
+
+    /**
+     * @param table the position of the table in a fetch-joined query, 0 for the queried table
+     * @return the prefix of the column labels of the table in a fetch-joined query
+     */
+    static String joinPrefix(int table) {
+        return "t" + table + "_";
+    }
+
+    /**
+     * Renders a SELECT statement of the given columns with every clause of this query.
+     *
+     * @param columns the rendered SELECT list
+     * @return the SELECT statement
+     */
+    private String selectSql(String columns) {
+        return selectSql(columns, limit, offset);
+    }
+
+    /**
+     * Same as selectSql(String) with the given LIMIT and OFFSET instead of those of this query.
+     *
+     * @param columns the rendered SELECT list
+     * @param limit   the LIMIT of the statement, or null
+     * @param offset  the OFFSET of the statement, or null
+     * @return the SELECT statement
+     */
+    private String selectSql(String columns, Integer limit, Integer offset) {
+        StringBuilder sql = new StringBuilder(64).append("SELECT ").append(columns).append(" FROM ");
+        renderFrom(sql);
+        renderClauses(sql, limit, offset);
+        return sql.toString();
+    }
+
+    /**
+     * Renders the SELECT statement sent to each shard when the query is scattered: the first offset + limit rows
+     * of the shard, the offset being applied once the rows of the shards are merged.
+     *
+     * @param columns the rendered SELECT list
+     * @return the SELECT statement
+     */
+    private String scatterSql(String columns) {
+        return selectSql(columns, limit == null ? null : limit + (offset == null ? 0 : offset), null);
+    }
+
+    /**
+     * Renders the queried table followed by its joins.
+     *
+     * @param sql the statement being rendered
+     */
+    private void renderFrom(StringBuilder sql) {
+        sql.append(metadata.getTableName());
+        for (String join : joins) {
+            sql.append(join);
+        }
+    }
+
+    /**
+     * Renders the WHERE, ORDER BY and LIMIT clauses of this query, in SQL order, after checkWriteClauses().
+     *
+     * @param sql the DELETE or UPDATE statement being rendered
+     */
+    private void renderWriteClauses(StringBuilder sql) {
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ");
+            renderConditions(sql, conditions);
+        }
+        if (!orderings.isEmpty()) sql.append(" ORDER BY ").append(String.join(", ", orderings));
+        if (limit != null) sql.append(" LIMIT ").append(limit);
+    }
+
+    /**
+     * Renders the WHERE, GROUP BY, HAVING, ORDER BY, LIMIT and OFFSET clauses of this query, in SQL order.
+     *
+     * @param sql the statement being rendered
+     * @param limit the LIMIT to render, or null
+     * @param offset the OFFSET to render, or null
+     */
+    private void renderClauses(StringBuilder sql, Integer limit, Integer offset) {
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ");
+            renderConditions(sql, conditions);
+        }
+        if (!groupColumns.isEmpty()) sql.append(" GROUP BY ").append(String.join(", ", groupColumns));
+        if (!havingConditions.isEmpty()) {
+            sql.append(" HAVING ");
+            renderConditions(sql, havingConditions);
+        }
+        if (!orderings.isEmpty()) sql.append(" ORDER BY ").append(String.join(", ", orderings));
+        if (limit != null) sql.append(" LIMIT ").append(limit);
+        if (offset != null) sql.append(" OFFSET ").append(offset);
+    }
+
+    private static void renderConditions(StringBuilder sql, List<Condition> conditions) {
+        for (int i = 0; i < conditions.size(); i++) {
+            Condition condition = conditions.get(i);
+            if (i > 0) sql.append(' ').append(condition.connector).append(' ');
+            sql.append(condition.expression);
+        }
+    }
+
+    /**
+     * @return the values of the WHERE then HAVING conditions, in placeholder order
+     */
+    private List<Object> parameters() {
+        List<Object> values = new ArrayList<>();
+        for (Condition condition : conditions) {
+            values.addAll(condition.values);
+        }
+        for (Condition condition : havingConditions) {
+            values.addAll(condition.values);
+        }
+        return values;
+    }
+
+    /**
+     * @return the indexes of the values bound to the shard key by the first equality or IN condition on it,
+     * or null if the conditions do not restrict the shard key or are joined with OR
+     */
+    private int[] shardKeyParameters() {
+        EntityMetadata.ColumnMapping key = metadata.getShardKey();
+        int[] indexes = null;
+        int position = 0;
+        for (Condition condition : conditions) {
+            if (condition.connector.equals("OR")) return null;
+            boolean onKey = key.getName().equals(condition.column)
+                    || (metadata.getTableName() + "." + key.getName()).equals(condition.column);
+            if (indexes == null && onKey && !condition.values.isEmpty()) {
+                indexes = new int[condition.values.size()];
+                for (int i = 0; i < indexes.length; i++) {
+                    indexes[i] = position + i;
+                }
+            }
+            position += condition.values.size();
+        }
+        return indexes;
+    }
+
+    /**
+     * @param unsupported why the query cannot be scattered to several shards, or null if it can
+     * @return the routing of a query whose rows are not merged, or null if the table declares no shard key
+     */
+    private ShardPlan<T> shardPlan(String unsupported) {
+        return metadata.getShardKey() == null ? null : new ShardPlan<>(metadata, shardKeyParameters(), unsupported);
+    }
+
+    /**
+     * Finds the single shard a query returning a single stream of rows must run on.
+     *
+     * @param values    the values bound to the placeholders
+     * @param operation the name of the operation, for the error message
+     * @return the index of the shard, or -1 to run the query on the pool of the current thread
+     * @throws IllegalStateException if the query must be scattered to several shards
+     */
+    private int singleShard(List<Object> values, String operation) {
+        ShardPlan<T> plan = shardPlan(operation + " reads a single query");
+        int[] shards = plan == null ? null : plan.route(values);
+        return shards == null ? -1 : shards[0];
+    }
+
+    /**
+     * A query rendered from the state of the builder, to be run later, possibly on another thread.
+     */
+    private interface RenderedQuery<R> {
+        R run() throws SQLException;
+    }
+
+    /**
+     * A condition of the WHERE or HAVING clause: a boolean expression with its placeholder values,
+     * the connector joining it to the previous condition and, for an equality or IN condition,
+     * the column it restricts.
+     */
+    private static final class Condition {
+        private final String connector;
+        private final String expression;
+        private final List<Object> values;
+        private final String column;
+
+        private Condition(String connector, String expression, List<Object> values) {
+            this(connector, expression, values, null);
+        }
+
+        private Condition(String connector, String expression, List<Object> values, String column) {
+            this.connector = connector;
+            this.expression = expression;
+            this.values = values;
+            this.column = column;
+        }
     }
 }
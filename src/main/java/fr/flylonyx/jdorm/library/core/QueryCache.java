@@ -0,0 +1,183 @@
+package fr.flylonyx.jdorm.library.core;
+
+import fr.flylonyx.jdorm.library.cache.CacheStats;
+import fr.flylonyx.jdorm.library.cache.LruCache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared cache of the results of QueryBuilder queries marked with cached(Duration).
+ * Results are keyed by their SQL and bind parameters and stored as row values, so every hit returns new instances.
+ * Each table has a version number bumped by every write going through Model or QueryBuilder; a cached result
+ * is only returned while the versions of all the tables it read are unchanged.
+ * The cache is bounded by the estimated memory weight of the stored rows, 64 MB by default.
+ */
+public final class QueryCache {
+    private static final long DEFAULT_MAX_WEIGHT = 64L * 1024 * 1024;
+    private static final Map<String, AtomicLong> TABLE_VERSIONS = new ConcurrentHashMap<>();
+    private static volatile LruCache<Key, Result> cache = newCache(DEFAULT_MAX_WEIGHT);
+
+    private QueryCache() {
+    }
+
+    /**
+     * Replaces the query cache with an empty one bounded by the given weight budget.
+     *
+     * @param maxWeightBytes the maximum estimated memory, in bytes, of the cached rows
+     */
+    public static void configure(long maxWeightBytes) {
+        cache = newCache(maxWeightBytes);
+    }
+
+    /**
+     * @return the hit, miss and eviction counters of the query cache
+     */
+    public static CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * Invalidates every cached result that read the given table.
+     *
+     * @param tableName the name of the modified table
+     */
+    public static void invalidateTable(String tableName) {
+        version(tableName).incrementAndGet();
+    }
+
+    /**
+     * Removes every cached result.
+     */
+    public static void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Returns the cached rows of a query, if they are still valid.
+     *
+     * @param sql        the SQL of the query
+     * @param parameters the bind parameters of the query
+     * @return the cached row values, or null if absent, expired or invalidated by a write
+     */
+    static List<Object[]> get(String sql, List<Object> parameters) {
+        Result result = cache.get(new Key(sql, parameters), Result::isCurrent);
+        return result == null ? null : result.rows;
+    }
+
+    /**
+     * Reads the current versions of the given tables, to be passed to put() once the query has run.
+     *
+     * @param tables the tables read by the query
+     * @return the versions of the tables, in the same order
+     */
+    static long[] versions(List<String> tables) {
+        long[] versions = new long[tables.size()];
+        for (int i = 0; i < versions.length; i++) {
+            versions[i] = version(tables.get(i)).get();
+        }
+        return versions;
+    }
+
+    /**
+     * Caches the rows of a query.
+     *
+     * @param sql        the SQL of the query
+     * @param parameters the bind parameters of the query
+     * @param tables     the tables read by the query
+     * @param versions   the versions of the tables read before the query ran
+     * @param rows       the row values returned by the query
+     * @param ttl        how long the rows stay cached
+     */
+    static void put(String sql, List<Object> parameters, List<String> tables, long[] versions, List<Object[]> rows, Duration ttl) {
+        AtomicLong[] counters = new AtomicLong[tables.size()];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = version(tables.get(i));
+        }
+        cache.put(new Key(sql, parameters), new Result(rows, counters, versions), ttl.toMillis());
+    }
+
+    private static AtomicLong version(String tableName) {
+        return TABLE_VERSIONS.computeIfAbsent(tableName.toLowerCase(Locale.ROOT), t -> new AtomicLong());
+    }
+
+    private static LruCache<Key, Result> newCache(long maxWeightBytes) {
+        return new LruCache<>(maxWeightBytes, Result::weight, 0);
+    }
+
+    /**
+     * Cache key made of the SQL of a query and a copy of its bind parameters.
+     */
+    private static final class Key {
+        private final String sql;
+        private final List<Object> parameters;
+        private final int hash;
+
+        private Key(String sql, List<Object> parameters) {
+            this.sql = sql;
+            this.parameters = Collections.unmodifiableList(new ArrayList<>(parameters));
+            this.hash = 31 * sql.hashCode() + this.parameters.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return hash == key.hash && sql.equals(key.sql) && parameters.equals(key.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Cached rows of a query together with the versions of the tables they were read from.
+     */
+    private static final class Result {
+        private final List<Object[]> rows;
+        private final AtomicLong[] tableVersions;
+        private final long[] versions;
+
+        private Result(List<Object[]> rows, AtomicLong[] tableVersions, long[] versions) {
+            this.rows = rows;
+            this.tableVersions = tableVersions;
+            this.versions = versions;
+        }
+
+        private boolean isCurrent() {
+            for (int i = 0; i < versions.length; i++) {
+                if (tableVersions[i].get() != versions[i]) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Estimates the memory used by the cached rows, counting object headers and references roughly.
+         */
+        private long weight() {
+            long weight = 64;
+            for (Object[] row : rows) {
+                weight += 16 + 8L * row.length;
+                for (Object value : row) {
+                    if (value instanceof String) {
+                        weight += 40 + ((String) value).length();
+                    } else if (value instanceof byte[]) {
+                        weight += 16 + ((byte[]) value).length;
+                    } else if (value != null) {
+                        weight += 24;
+                    }
+                }
+            }
+            return weight;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package fr.flylonyx.jdorm.library.core;
+
+import fr.flylonyx.jdorm.library.annotations.BelongsTo;
+import fr.flylonyx.jdorm.library.annotations.HasMany;
+import fr.flylonyx.jdorm.library.annotations.HasOne;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mapping information of a field annotated with @HasMany, @HasOne or @BelongsTo, held by the EntityMetadata
+ * of the declaring model. A relation links a column of the declaring model (the source column) to a column
+ * of the related model (the target column), and is loaded for a whole list of models at once: the related
+ * rows are fetched with chunked WHERE target IN (...) queries, then assigned to each model in memory.
+ * Loaded models are marked so that lazy access through Model.relation() does not load them again.
+ */
+final class RelationMapping {
+    private static final int CHUNK_SIZE = 1000;
+
+    private final String name;
+    private final Field field;
+    private final Class<? extends Model> target;
+    private final boolean many;
+    private final String sourceColumn;
+    private final String targetColumn;
+    private final int batchSize;
+
+    private RelationMapping(Field field, Class<? extends Model> target, boolean many, String sourceColumn, String targetColumn, int batchSize) {
+        this.name = field.getName();
+        this.field = field;
+        this.target = target;
+        this.many = many;
+        this.sourceColumn = sourceColumn;
+        this.targetColumn = targetColumn;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Resolves the relation declared by the given field.
+     *
+     * @param field a field of a model
+     * @return the relation declared by the field, or null if the field has no relation annotation
+     * @throws IllegalArgumentException if the field type cannot hold the related models
+     */
+    static RelationMapping of(Field field) {
+        HasMany hasMany = field.getAnnotation(HasMany.class);
+        if (hasMany != null) {
+            if (!field.getType().isAssignableFrom(ArrayList.class)) {
+                throw new IllegalArgumentException("@HasMany field " + field.getName() + " must be declared as a List");
+            }
+            field.setAccessible(true);
+            return new RelationMapping(field, modelType(field, elementType(field)), true, hasMany.localKey(), hasMany.foreignKey(), hasMany.batchSize());
+        }
+
+        HasOne hasOne = field.getAnnotation(HasOne.class);
+        if (hasOne != null) {
+            field.setAccessible(true);
+            return new RelationMapping(field, modelType(field, field.getType()), false, hasOne.localKey(), hasOne.foreignKey(), hasOne.batchSize());
+        }
+
+        BelongsTo belongsTo = field.getAnnotation(BelongsTo.class);
+        if (belongsTo != null) {
+            field.setAccessible(true);
+            return new RelationMapping(field, modelType(field, field.getType()), false, belongsTo.foreignKey(), belongsTo.ownerKey(), belongsTo.batchSize());
+        }
+        return null;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    Class<? extends Model> getTarget() {
+        return target;
+    }
+
+    boolean isMany() {
+        return many;
+    }
+
+    String getSourceColumn() {
+        return sourceColumn;
+    }
+
+    String getTargetColumn() {
+        return targetColumn;
+    }
+
+    /**
+     * @return the number of models of the same result set the relation is lazily loaded for at once
+     */
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param model a model declaring the relation
+     * @return the current value of the relation field of the model
+     * @throws IllegalAccessException if the field cannot be read
+     */
+    Object get(Object model) throws IllegalAccessException {
+        return field.get(model);
+    }
+
+    /**
+     * Loads the relation of every given model with one query per chunk of distinct keys,
+     * and assigns the related models to the relation field: a list, possibly empty, for @HasMany,
+     * and the related model or null otherwise.
+     *
+     * @param owner  the metadata of the models declaring the relation
+     * @param models the models to load the relation of
+     * @param <T> the type of the models declaring the relation
+     * @throws Exception if an error occurs during query execution or object instantiation.
+     */
+    <T> void load(EntityMetadata<T> owner, List<T> models) throws Exception {
+        if (models.isEmpty()) return;
+
+        EntityMetadata.ColumnMapping source = requireColumn(owner, sourceColumn);
+        Map<Object, Object> keys = new LinkedHashMap<>();
+        for (T model : models) {
+            Object key = source.get(model);
+            if (key != null) keys.putIfAbsent(EntityMetadata.cacheKey(key), key);
+        }
+
+        Map<Object, List<Model>> related = fetchRelated(target, new ArrayList<>(keys.values()));
+        for (T model : models) {
+            Object key = source.get(model);
+            List<Model> matches = key == null ? null : related.get(EntityMetadata.cacheKey(key));
+            assign(model, matches == null ? Collections.emptyList() : matches);
+        }
+    }
+
+    /**
+     * Assigns the related models to the relation field of a model, and marks the relation as loaded.
+     *
+     * @param model   a model declaring the relation
+     * @param matches the models related to it, possibly empty
+     * @throws IllegalAccessException if the field cannot be written
+     */
+    void assign(Object model, List<Model> matches) throws IllegalAccessException {
+        field.set(model, many ? new ArrayList<>(matches) : matches.isEmpty() ? null : matches.get(0));
+        if (model instanceof Model) ((Model) model).markRelationLoaded(name);
+    }
+
+    /**
+     * Fetches the related rows whose target column holds one of the given keys, by chunks of keys.
+     *
+     * @param type the related model class
+     * @param keys the distinct keys to look up
+     * @param <R> the related model type
+     * @return the related models grouped by the normalized value of their target column
+     * @throws Exception if an error occurs during query execution or object instantiation.
+     */
+    private <R extends Model> Map<Object, List<Model>> fetchRelated(Class<R> type, List<Object> keys) throws Exception {
+        EntityMetadata.ColumnMapping column = requireColumn(EntityMetadata.of(type), targetColumn);
+        Map<Object, List<Model>> related = new HashMap<>();
+        for (int from = 0; from < keys.size(); from += CHUNK_SIZE) {
+            List<Object> chunk = keys.subList(from, Math.min(from + CHUNK_SIZE, keys.size()));
+            for (R row : new QueryBuilder<>(type).whereIn(targetColumn, chunk).execute()) {
+                related.computeIfAbsent(EntityMetadata.cacheKey(column.get(row)), k -> new ArrayList<>()).add(row);
+            }
+        }
+        return related;
+    }
+
+    private EntityMetadata.ColumnMapping requireColumn(EntityMetadata<?> metadata, String column) {
+        EntityMetadata.ColumnMapping mapping = metadata.getColumn(column);
+        if (mapping == null) {
+            throw new IllegalStateException("Relation " + name + ": " + column + " is not a @Column field of " + metadata.getType().getName());
+        }
+        return mapping;
+    }
+
+    private static Type elementType(Field field) {
+        Type type = field.getGenericType();
+        if (!(type instanceof ParameterizedType)) {
+            throw new IllegalArgumentException("@HasMany field " + field.getName() + " must declare its element type");
+        }
+        return ((ParameterizedType) type).getActualTypeArguments()[0];
+    }
+
+    private static Class<? extends Model> modelType(Field field, Type type) {
+        if (!(type instanceof Class) || !Model.class.isAssignableFrom((Class<?>) type)) {
+            throw new IllegalArgumentException("Relation field " + field.getName() + " must refer to a Model class");
+        }
+        return ((Class<?>) type).asSubclass(Model.class);
+    }
+}
@@ -0,0 +1,199 @@
+package fr.flylonyx.jdorm.library.core;
+
+import fr.flylonyx.jdorm.library.database.Connection;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publisher of the rows of a query with backpressure, created by QueryBuilder.publish().
+ * The interfaces follow the contract of java.util.concurrent.Flow (Reactive Streams): a subscriber receives
+ * onSubscribe(), then at most as many onNext() calls as it requested, then onComplete() or onError().
+ * Rows are read from a streaming result set only while the subscriber has outstanding demand, so the driver
+ * stops reading from the server while the subscriber is busy. Signals are delivered one at a time on the
+ * async executor of Connection, and the statement is closed on completion, on error and on cancellation.
+ *
+ * @param <T> the model type of the published rows
+ */
+public final class RowPublisher<T extends Model> {
+    private final EntityMetadata<T> metadata;
+    private final String sql;
+    private final List<Object> values;
+    private final int shard;
+
+    /**
+     * Receives the rows of a subscription, with the same contract as java.util.concurrent.Flow.Subscriber.
+     *
+     * @param <T> the type of the received rows
+     */
+    public interface Subscriber<T> {
+        void onSubscribe(Subscription subscription);
+
+        void onNext(T item);
+
+        void onError(Throwable throwable);
+
+        void onComplete();
+    }
+
+    /**
+     * Controls the flow of rows to a subscriber, with the same contract as java.util.concurrent.Flow.Subscription.
+     */
+    public interface Subscription {
+        /**
+         * Requests n more rows; Long.MAX_VALUE requests every remaining row.
+         *
+         * @param n the number of additional rows, which must be positive
+         */
+        void request(long n);
+
+        /**
+         * Stops the delivery of rows and closes the statement of the subscription.
+         */
+        void cancel();
+    }
+
+    /**
+     * @param metadata the metadata of the published model
+     * @param sql      the SQL of the query
+     * @param values   the values bound to the placeholders
+     * @param shard    the index of the shard the query runs on, or -1 for the primary or its replicas
+     */
+    RowPublisher(EntityMetadata<T> metadata, String sql, List<Object> values, int shard) {
+        this.metadata = metadata;
+        this.sql = sql;
+        this.values = Collections.unmodifiableList(new ArrayList<>(values));
+        this.shard = shard;
+    }
+
+    /**
+     * Subscribes to the rows of the query. The query is executed when the subscriber first requests rows.
+     *
+     * @param subscriber the subscriber of the rows
+     */
+    public void subscribe(Subscriber<? super T> subscriber) {
+        if (subscriber == null) throw new NullPointerException("subscriber");
+        RowSubscription subscription = new RowSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * Delivers the rows of one subscription. Requests and cancellations only update the demand and schedule
+     * a drain run; drain runs are serialized, so the statement and result set are only used by one thread at a time.
+     */
+    private final class RowSubscription implements Subscription {
+        private final Subscriber<? super T> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger pendingRuns = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile long invalidRequest;
+        private PreparedStatement stmt;
+        private ResultSet rs;
+        private int[] indexes;
+        private boolean done;
+
+        private RowSubscription(Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = n;
+                cancelled = true;
+            } else {
+                demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (pendingRuns.getAndIncrement() != 0) return;
+            Connection.supplyAsync(() -> {
+                drain();
+                return null;
+            });
+        }
+
+        /**
+         * Emits rows while there is demand, until the rows, the demand or the subscription run out,
+         * then loops again if requests or cancellations arrived in the meantime.
+         */
+        private void drain() {
+            int missed = 1;
+            while (!done) {
+                if (cancelled) {
+                    close();
+                    if (invalidRequest != 0) {
+                        subscriber.onError(new IllegalArgumentException("Non-positive request of " + invalidRequest + " rows"));
+                    }
+                    return;
+                }
+
+                long requested = demand.get();
+                long emitted = 0;
+                try {
+                    if (requested > 0 && stmt == null) open();
+                    while (emitted < requested && !cancelled) {
+                        if (!rs.next()) {
+                            SQLException failure = close();
+                            if (failure != null) {
+                                subscriber.onError(failure);
+                            } else {
+                                subscriber.onComplete();
+                            }
+                            return;
+                        }
+                        subscriber.onNext(metadata.hydrate(rs, indexes));
+                        emitted++;
+                    }
+                } catch (SQLException | ReflectiveOperationException | RuntimeException e) {
+                    close();
+                    subscriber.onError(e);
+                    return;
+                }
+                if (emitted > 0 && requested != Long.MAX_VALUE) demand.addAndGet(-emitted);
+
+                missed = pendingRuns.addAndGet(-missed);
+                if (missed == 0) return;
+            }
+        }
+
+        private void open() throws SQLException {
+            stmt = ShardPlan.onShard(shard, () -> QueryBuilder.prepareStreaming(sql, values));
+            rs = stmt.executeQuery();
+            indexes = metadata.columnIndexes(rs);
+        }
+
+        /**
+         * Closes the statement of the subscription, after which no row is emitted.
+         *
+         * @return the exception raised while closing the statement, or null
+         */
+        private SQLException close() {
+            done = true;
+            SQLException failure = null;
+            try {
+                if (rs != null) rs.close();
+                if (stmt != null) stmt.close();
+            } catch (SQLException e) {
+                failure = e;
+            }
+            rs = null;
+            stmt = null;
+            return failure;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package fr.flylonyx.jdorm.library.core;
+
+import fr.flylonyx.jdorm.library.database.Connection;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+
+/**
+ * Routing of a query on a sharded table, created by QueryBuilder.
+ * A query whose conditions restrict the shard key to given values, with an equality or an IN condition joined
+ * to the others by AND, only runs on the shards of these values. Any other query is scattered to every shard
+ * in parallel and the rows of the shards are gathered: the query sent to each shard fetches its first
+ * offset + limit rows, which are merged in the order of the ORDER BY columns with a k-way merge before the
+ * offset and limit are applied once to the merged rows. Nothing is routed while the thread is bound to a shard
+ * with Connection.useShard() or onShard(): the query runs on that shard only.
+ *
+ * @param <T> the model type queried
+ */
+final class ShardPlan<T extends Model> {
+    private final EntityMetadata<T> metadata;
+    private final int[] keyParameters;
+    private final String unsupported;
+    private final String scatterSql;
+    private final Comparator<T> order;
+    private final int offset;
+    private final Integer limit;
+
+    /**
+     * Creates the plan of a query whose rows are not merged, such as an aggregate or a bulk write.
+     *
+     * @param metadata      the metadata of the sharded model
+     * @param keyParameters the indexes of the values bound to the shard key, or null if the key is not restricted
+     * @param unsupported   why the query cannot be scattered to several shards, or null if it can
+     */
+    ShardPlan(EntityMetadata<T> metadata, int[] keyParameters, String unsupported) {
+        this(metadata, keyParameters, unsupported, null, new ArrayList<>(), "*", null, null);
+    }
+
+    /**
+     * Creates the plan of a query returning models, whose rows are merged.
+     *
+     * @param metadata      the metadata of the sharded model
+     * @param keyParameters the indexes of the values bound to the shard key, or null if the key is not restricted
+     * @param unsupported   why the query cannot be scattered to several shards, or null if it can
+     * @param scatterSql    the query sent to each shard, fetching up to offset + limit rows without offset
+     * @param orderings     the ORDER BY clauses of the query
+     * @param selectList    the rendered SELECT list of the query
+     * @param offset        the OFFSET of the query, or null
+     * @param limit         the LIMIT of the query, or null
+     */
+    ShardPlan(EntityMetadata<T> metadata, int[] keyParameters, String unsupported, String scatterSql,
+              List<String> orderings, String selectList, Integer offset, Integer limit) {
+        this.metadata = metadata;
+        this.keyParameters = keyParameters;
+        this.scatterSql = scatterSql;
+        this.offset = offset == null ? 0 : offset;
+        this.limit = limit;
+
+        Comparator<T> comparator = null;
+        for (String ordering : orderings) {
+            String[] parts = ordering.trim().split("\\s+");
+            boolean descending = parts.length == 2 && parts[1].equalsIgnoreCase("DESC");
+            boolean plain = parts.length == 1 || (parts.length == 2 && (descending || parts[1].equalsIgnoreCase("ASC")));
+            EntityMetadata.ColumnMapping column = plain ? metadata.getColumn(parts[0]) : null;
+            if (column == null || !selects(selectList, column)) {
+                if (unsupported == null) unsupported = "the rows of the shards cannot be merged on " + ordering + ", which is not a selected @Column field";
+                comparator = null;
+                break;
+            }
+            Comparator<T> byColumn = (a, b) -> compareValues(read(column, a), read(column, b));
+            if (descending) byColumn = byColumn.reversed();
+            comparator = comparator == null ? byColumn : comparator.thenComparing(byColumn);
+        }
+        this.order = comparator;
+        this.unsupported = unsupported;
+    }
+
+    /**
+     * @return the query sent to each shard when the query is scattered
+     */
+    String getScatterSql() {
+        return scatterSql;
+    }
+
+    /**
+     * Finds the shards the query must run on for the given values.
+     *
+     * @param values the values bound to the placeholders, the conditions values first
+     * @return null if the query runs on the pool of the current thread, otherwise the indexes of the shards,
+     * in ascending order
+     * @throws IllegalStateException if the query must be scattered to several shards but cannot be
+     * @throws IllegalArgumentException if a value bound to the shard key cannot be converted to the type of the key
+     */
+    int[] route(List<Object> values) {
+        if (!metadata.isSharded() || Connection.currentShard() >= 0) return null;
+
+        TreeSet<Integer> shards = new TreeSet<>();
+        if (keyParameters == null) {
+            for (int i = 0; i < Connection.shardCount(); i++) {
+                shards.add(i);
+            }
+        } else {
+            for (int parameter : keyParameters) {
+                Object key = values.get(parameter);
+                // A NULL key matches no row, any shard answers it.
+                shards.add(key == null ? 0 : metadata.shardOf(key));
+            }
+        }
+        if (shards.size() > 1 && unsupported != null) {
+            throw new IllegalStateException("The query cannot run on several shards: " + unsupported
+                    + ". Restrict " + metadata.getShardKey().getName() + " with where() or whereIn(), or run it within Connection.onShard()");
+        }
+
+        int[] indexes = new int[shards.size()];
+        int i = 0;
+        for (int shard : shards) {
+            indexes[i++] = shard;
+        }
+        return indexes;
+    }
+
+    /**
+     * Merges the rows fetched from each shard, in the order of the ORDER BY columns, or one shard after the other
+     * if the query is not ordered, then applies the offset and limit of the query.
+     *
+     * @param partials the rows of each shard, each in the order of the query
+     * @return the rows of the query
+     */
+    List<T> merge(List<List<T>> partials) {
+        long end = limit == null ? Long.MAX_VALUE : (long) offset + limit;
+        List<T> merged = new ArrayList<>();
+        long position = 0;
+
+        if (order == null) {
+            for (List<T> partial : partials) {
+                for (T row : partial) {
+                    if (position >= end) return merged;
+                    if (position++ >= offset) merged.add(row);
+                }
+            }
+            return merged;
+        }
+
+        // Each head is {shard, position in the rows of the shard}; ties go to the lowest shard.
+        PriorityQueue<int[]> heads = new PriorityQueue<>((a, b) -> {
+            int compared = order.compare(partials.get(a[0]).get(a[1]), partials.get(b[0]).get(b[1]));
+            return compared != 0 ? compared : Integer.compare(a[0], b[0]);
+        });
+        for (int shard = 0; shard < partials.size(); shard++) {
+            if (!partials.get(shard).isEmpty()) heads.add(new int[]{shard, 0});
+        }
+        while (!heads.isEmpty() && position < end) {
+            int[] head = heads.poll();
+            List<T> partial = partials.get(head[0]);
+            if (position++ >= offset) merged.add(partial.get(head[1]));
+            if (++head[1] < partial.size()) heads.add(head);
+        }
+        return merged;
+    }
+
+    /**
+     * Same as Connection.onShard() for work throwing SQLException, the other checked exceptions being wrapped.
+     *
+     * @param shard the index of the shard, or -1 to run the work on the pool of the current thread
+     */
+    static <R> R onShard(int shard, Callable<R> work) throws SQLException {
+        try {
+            return shard < 0 ? work.call() : Connection.onShard(shard, work);
+        } catch (SQLException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Same as Connection.onShards() for work throwing SQLException, the other checked exceptions being wrapped.
+     */
+    static <R> List<R> onShards(int[] shards, Callable<R> work) throws SQLException {
+        try {
+            return Connection.onShards(shards, work);
+        } catch (SQLException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Adds up the SUM or COUNT of each shard.
+     *
+     * @param partials the value of each shard, null for a shard without matching rows
+     * @return the total, as a BigDecimal if a value is exact decimal, a Double if a value is floating point,
+     * a Long otherwise, or null if every value is null
+     */
+    static Number sum(List<?> partials) {
+        BigDecimal exact = null;
+        Double approximate = null;
+        Long integral = null;
+        for (Object partial : partials) {
+            if (partial == null) continue;
+            Number value = (Number) partial;
+            if (value instanceof BigDecimal || value instanceof BigInteger) {
+                exact = (exact == null ? BigDecimal.ZERO : exact).add(new BigDecimal(value.toString()));
+            } else if (value instanceof Double || value instanceof Float) {
+                approximate = (approximate == null ? 0 : approximate) + value.doubleValue();
+            } else {
+                integral = (integral == null ? 0 : integral) + value.longValue();
+            }
+        }
+        if (approximate != null) {
+            return approximate + (exact == null ? 0 : exact.doubleValue()) + (integral == null ? 0 : integral);
+        }
+        if (exact != null) return integral == null ? exact : exact.add(BigDecimal.valueOf(integral));
+        return integral;
+    }
+
+    /**
+     * @param partials the MIN or MAX of each shard, null for a shard without matching rows
+     * @param max      true to keep the greatest value, false the smallest
+     * @return the smallest or greatest value, or null if every value is null
+     */
+    static Number extreme(List<?> partials, boolean max) {
+        Number best = null;
+        for (Object partial : partials) {
+            if (partial == null) continue;
+            Number value = (Number) partial;
+            int compared = best == null ? 0 : compareValues(value, best);
+            if (best == null || (max ? compared > 0 : compared < 0)) best = value;
+        }
+        return best;
+    }
+
+    /**
+     * Divides the total SUM by the total COUNT of the shards, with the 4 extra decimals MySQL gives AVG of exact values.
+     *
+     * @param partials the SUM and COUNT of each shard
+     * @return the average, or null if no shard has a matching row
+     */
+    static Number average(List<Object[]> partials) {
+        List<Object> sums = new ArrayList<>(partials.size());
+        long count = 0;
+        for (Object[] partial : partials) {
+            sums.add(partial[0]);
+            if (partial[1] != null) count += ((Number) partial[1]).longValue();
+        }
+        Number sum = sum(sums);
+        if (sum == null || count == 0) return null;
+        if (sum instanceof BigDecimal) {
+            BigDecimal exact = (BigDecimal) sum;
+            return exact.divide(BigDecimal.valueOf(count), exact.scale() + 4, RoundingMode.HALF_UP);
+        }
+        if (sum instanceof Double) return sum.doubleValue() / count;
+        return BigDecimal.valueOf(sum.longValue()).divide(BigDecimal.valueOf(count), 4, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Compares column values the way MySQL sorts them: NULL first, strings ignoring case as with the default
+     * case-insensitive collations, and numbers of different types by value.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareValues(Object a, Object b) {
+        if (a == null || b == null) return a == null ? (b == null ? 0 : -1) : 1;
+        if (a instanceof String && b instanceof String) return String.CASE_INSENSITIVE_ORDER.compare((String) a, (String) b);
+        if (a instanceof Number && b instanceof Number && a.getClass() != b.getClass()) {
+            return new BigDecimal(a.toString()).compareTo(new BigDecimal(b.toString()));
+        }
+        return ((Comparable) a).compareTo(b);
+    }
+
+    private static Object read(EntityMetadata.ColumnMapping column, Object row) {
+        try {
+            return column.get(row);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return true if the SELECT list fetches the given column of the queried table
+     */
+    private static boolean selects(String selectList, EntityMetadata.ColumnMapping column) {
+        for (String selected : selectList.split(",")) {
+            String name = selected.trim();
+            name = name.substring(name.lastIndexOf('.') + 1);
+            if (name.equals("*") || name.equalsIgnoreCase(column.getName())) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,48 @@
+package fr.flylonyx.jdorm.library.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The models returned together by a query, shared by each of them so that a relation lazily loaded
+ * from one model is loaded in the same query for the following models of the result.
+ * The group keeps its models reachable as long as one of them is, like the result list itself.
+ */
+final class SiblingGroup {
+    private final Model[] models;
+
+    private SiblingGroup(Model[] models) {
+        this.models = models;
+    }
+
+    /**
+     * Links every given model to a group of the whole list, unless the list holds a single model.
+     *
+     * @param models the models returned by a query, in result order
+     */
+    static void attach(List<? extends Model> models) {
+        if (models.size() < 2) return;
+        SiblingGroup group = new SiblingGroup(models.toArray(new Model[0]));
+        for (int i = 0; i < group.models.length; i++) {
+            group.models[i].joinSiblings(group, i);
+        }
+    }
+
+    /**
+     * Selects the models to load a relation for: the model at the given position, then the next models
+     * of the group that have not loaded the relation yet, up to the given size.
+     *
+     * @param index    the position of the model accessing the relation
+     * @param relation the name of the relation field
+     * @param size     the maximum number of models to select
+     * @return the models to load the relation for, starting with the model at the given position
+     */
+    List<Model> window(int index, String relation, int size) {
+        List<Model> window = new ArrayList<>(Math.min(size, models.length - index));
+        window.add(models[index]);
+        for (int i = index + 1; i < models.length && window.size() < size; i++) {
+            if (!models[i].isRelationLoaded(relation)) window.add(models[i]);
+        }
+        return window;
+    }
+}
@@ -0,0 +1,111 @@
+package fr.flylonyx.jdorm.library.core;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Family of Java field types, selecting the typed ResultSet getter used to read a column into a field.
+ */
+enum ValueType {
+    INT, LONG, DOUBLE, FLOAT, BOOLEAN, SHORT, BYTE,
+    BOXED_INT, BOXED_LONG, BOXED_DOUBLE, BOXED_FLOAT, BOXED_BOOLEAN, BOXED_SHORT, BOXED_BYTE,
+    STRING, BIG_DECIMAL, BYTES, OBJECT;
+
+    /**
+     * Returns the value type matching the declared type of a field.
+     *
+     * @param type the declared type of the field
+     * @return the matching value type, OBJECT for types read with getObject
+     */
+    static ValueType of(Class<?> type) {
+        if (type == int.class) return INT;
+        if (type == long.class) return LONG;
+        if (type == double.class) return DOUBLE;
+        if (type == float.class) return FLOAT;
+        if (type == boolean.class) return BOOLEAN;
+        if (type == short.class) return SHORT;
+        if (type == byte.class) return BYTE;
+        if (type == Integer.class) return BOXED_INT;
+        if (type == Long.class) return BOXED_LONG;
+        if (type == Double.class) return BOXED_DOUBLE;
+        if (type == Float.class) return BOXED_FLOAT;
+        if (type == Boolean.class) return BOXED_BOOLEAN;
+        if (type == Short.class) return BOXED_SHORT;
+        if (type == Byte.class) return BOXED_BYTE;
+        if (type == String.class) return STRING;
+        if (type == BigDecimal.class) return BIG_DECIMAL;
+        if (type == byte[].class) return BYTES;
+        return OBJECT;
+    }
+
+    /**
+     * Reads a column as an object with the getter matching this type.
+     * SQL NULL is returned as null for object types and as the default value for primitive types.
+     *
+     * @param rs    the result set positioned on the row to read
+     * @param index the index of the column in the result set
+     * @return the column value
+     * @throws SQLException if the column cannot be read
+     */
+    Object read(ResultSet rs, int index) throws SQLException {
+        Object value;
+        switch (this) {
+            case INT: return rs.getInt(index);
+            case LONG: return rs.getLong(index);
+            case DOUBLE: return rs.getDouble(index);
+            case FLOAT: return rs.getFloat(index);
+            case BOOLEAN: return rs.getBoolean(index);
+            case SHORT: return rs.getShort(index);
+            case BYTE: return rs.getByte(index);
+            case BOXED_INT: value = rs.getInt(index); break;
+            case BOXED_LONG: value = rs.getLong(index); break;
+            case BOXED_DOUBLE: value = rs.getDouble(index); break;
+            case BOXED_FLOAT: value = rs.getFloat(index); break;
+            case BOXED_BOOLEAN: value = rs.getBoolean(index); break;
+            case BOXED_SHORT: value = rs.getShort(index); break;
+            case BOXED_BYTE: value = rs.getByte(index); break;
+            case STRING: return rs.getString(index);
+            case BIG_DECIMAL: return rs.getBigDecimal(index);
+            case BYTES: return rs.getBytes(index);
+            default: return rs.getObject(index);
+        }
+        return rs.wasNull() ? null : value;
+    }
+
+    /**
+     * Boxes the raw bits of a primitive value, as recorded by EntityMetadata for the fields of a hydrated model.
+     *
+     * @param bits the value of an integral or boolean type widened to long, or the raw bits of a floating point value
+     * @return the boxed value
+     * @throws IllegalStateException if this type is not primitive
+     */
+    Object box(long bits) {
+        switch (this) {
+            case INT: return (int) bits;
+            case LONG: return bits;
+            case DOUBLE: return Double.longBitsToDouble(bits);
+            case FLOAT: return Float.intBitsToFloat((int) bits);
+            case BOOLEAN: return bits != 0;
+            case SHORT: return (short) bits;
+            case BYTE: return (byte) bits;
+            default: throw new IllegalStateException(this + " is not a primitive type");
+        }
+    }
+
+    /**
+     * @return the value a field of this type holds when its column is not read, 0 or false for primitives
+     */
+    Object defaultValue() {
+        switch (this) {
+            case INT: return 0;
+            case LONG: return 0L;
+            case DOUBLE: return 0d;
+            case FLOAT: return 0f;
+            case BOOLEAN: return false;
+            case SHORT: return (short) 0;
+            case BYTE: return (byte) 0;
+            default: return null;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package fr.flylonyx.jdorm.library.database;
+
+import java.lang.reflect.Method;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the asynchronous database tasks of Connection.supplyAsync() on an executor, at most maxConcurrency
+ * at once. Tasks beyond the limit wait in a queue instead of occupying a thread, and are handed to the executor
+ * as running tasks complete, so a burst of async queries neither overloads the database nor blocks threads
+ * waiting for a pooled connection.
+ */
+final class AsyncGate {
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final Executor executor;
+    private final Semaphore permits;
+    private final Queue<Task<?>> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param executor       the executor running the tasks
+     * @param maxConcurrency the maximum number of tasks running at once
+     */
+    AsyncGate(Executor executor, int maxConcurrency) {
+        this.executor = executor;
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    /**
+     * Queues a task and starts it as soon as fewer than maxConcurrency tasks are running.
+     *
+     * @param task the task to run
+     * @param <T> the type of the result of the task
+     * @return a future completed with the result of the task, or exceptionally with the exception it throws
+     */
+    <T> CompletableFuture<T> submit(Callable<T> task) {
+        Task<T> queued = new Task<>(task);
+        pending.add(queued);
+        drain();
+        return queued.future;
+    }
+
+    /**
+     * Hands queued tasks to the executor while permits are free. Called after each submission and after each
+     * completion, so a queued task always finds a free permit eventually.
+     */
+    private void drain() {
+        while (!pending.isEmpty() && permits.tryAcquire()) {
+            Task<?> task = pending.poll();
+            if (task == null) {
+                permits.release();
+                return;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        permits.release();
+                        drain();
+                    }
+                });
+            } catch (RuntimeException e) {
+                permits.release();
+                task.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Returns the default executor of the async tasks: one virtual thread per task when the runtime provides them
+     * (Java 21 and later), otherwise a cached pool of daemon threads.
+     *
+     * @return the default executor
+     */
+    static ExecutorService defaultExecutor() {
+        try {
+            Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtual.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            ThreadFactory daemons = task -> {
+                Thread thread = new Thread(task, "jdorm-async-" + THREAD_COUNT.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+            return Executors.newCachedThreadPool(daemons);
+        }
+    }
+
+    private static final class Task<T> implements Runnable {
+        private final Callable<T> callable;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private Task(Callable<T> callable) {
+            this.callable = callable;
+        }
+
+        @Override
+        public void run() {
+            try {
+                future.complete(callable.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -1,7 +1,21 @@
 package fr.flylonyx.jdorm.library.database;
 
+import fr.flylonyx.jdorm.library.cache.CacheStats;
+
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 public class Connection {
     private static String url;
@@ -10,7 +24,27 @@ public class Connection {
     private static String user;
     private static String password;
 
-    private static java.sql.Connection connection;
+    private static final Properties properties = new Properties();
+
+    private static volatile ConnectionPool pool;
+    private static int minPoolSize = 2;
+    private static int maxPoolSize = 10;
+    private static Duration acquireTimeout = Duration.ofSeconds(30);
+    private static Duration idleTimeout = Duration.ofMinutes(10);
+    private static Duration maxLifetime = Duration.ofMinutes(30);
+    private static Duration leakDetectionThreshold = Duration.ZERO;
+    private static volatile int statementCacheSize = 256;
+    private static volatile List<String> replicaHosts = Collections.emptyList();
+    private static Duration maxReplicaLag = Duration.ZERO;
+    private static volatile long readYourWritesNanos;
+    private static volatile ReplicaSet replicas;
+    private static final ThreadLocal<Long> LAST_WRITE = new ThreadLocal<>();
+    private static volatile List<String> shardHosts = Collections.emptyList();
+    private static volatile ShardSet shards;
+    private static final ThreadLocal<Integer> SHARD = new ThreadLocal<>();
+    private static Executor asyncExecutor;
+    private static volatile AsyncGate asyncGate;
+    private static final ThreadLocal<Transaction> TRANSACTION = new ThreadLocal<>();
     private static final int MAX_RETRIES = 3;
     private static final int RETRY_DELAY = 3000;
 
@@ -23,7 +57,8 @@ public class Connection {
      * @param dbUser the username for the database connection
      * @param dbPassword the password for the database connection
      */
-    public static void configure(String dbUrl, String dbHost, String dbName, String dbUser, String dbPassword) {
+    public static synchronized void configure(String dbUrl, String dbHost, String dbName, String dbUser, String dbPassword) {
+        shutdown();
         url = dbUrl;
         host = dbHost;
         database = dbName;
@@ -32,39 +67,637 @@ public class Connection {
     }
 
     /**
-     * Retrieves a database connection. If the connection is not established or is closed,
-     * it attempts to establish a connection using the configured parameters. It retries
-     * connecting a maximum number of times with a delay between each retry.
+     * Sets a driver property passed when the connection is established, such as useServerPrepStmts=true
+     * to let MySQL parse each cached prepared statement once on the server.
      *
-     * @return A java.sql.Connection object representing the established database connection.
-     * @throws SQLException if the database connection parameters are not configured,
-     * if unable to connect to the database after the maximum number of retries, or
-     * if an SQL exception occurs during the connection establishment process.
+     * @param name  the name of the driver property
+     * @param value the value of the driver property
      */
-    public static java.sql.Connection getConnection() throws SQLException {
-        if (connection == null || connection.isClosed()) {
-            if (url == null || host == null || database == null || user == null || password == null) {
-                throw new SQLException("Database connection parameters are not configured.");
+    public static synchronized void setProperty(String name, String value) {
+        properties.setProperty(name, value);
+    }
+
+    /**
+     * Configures the connection pool. Connections are established on demand up to maxSize, and a background
+     * task keeps at least minSize of them open. Replaces the current pool: its idle connections are closed,
+     * and its borrowed connections are closed when they are released.
+     *
+     * @param minSize                the number of connections kept open, 2 by default
+     * @param maxSize                the maximum number of connections borrowed at once, 10 by default
+     * @param acquireTimeout         the maximum time a borrower waits for a connection, 30 seconds by default
+     * @param idleTimeout            the time after which an idle connection above minSize is closed, 10 minutes by default
+     * @param maxLifetime            the time after which a connection is closed once released, 30 minutes by default
+     * @param leakDetectionThreshold the time after which a borrowed connection is reported with the stack of its
+     *                               borrower, Duration.ZERO (the default) disabling leak detection
+     */
+    public static synchronized void configurePool(int minSize, int maxSize, Duration acquireTimeout, Duration idleTimeout,
+                                                  Duration maxLifetime, Duration leakDetectionThreshold) {
+        if (minSize < 0 || maxSize <= 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Pool sizes must satisfy 0 <= minSize <= maxSize and maxSize > 0");
+        }
+        shutdown();
+        minPoolSize = minSize;
+        maxPoolSize = maxSize;
+        Connection.acquireTimeout = acquireTimeout;
+        Connection.idleTimeout = idleTimeout;
+        Connection.maxLifetime = maxLifetime;
+        Connection.leakDetectionThreshold = leakDetectionThreshold;
+        asyncGate = null;
+    }
+
+    /**
+     * Sets the executor running the async methods of Model, QueryBuilder and CompiledQuery.
+     * By default, each task runs on its own virtual thread when the runtime provides them (Java 21 and later),
+     * and on a cached pool of daemon threads otherwise.
+     *
+     * @param executor the executor of the async tasks, or null to restore the default one
+     */
+    public static synchronized void setAsyncExecutor(Executor executor) {
+        asyncExecutor = executor;
+        asyncGate = null;
+    }
+
+    /**
+     * Runs a database task asynchronously on the async executor. At most as many tasks as the maximum size of the
+     * connection pool run at once; the others wait in a queue without occupying a thread.
+     * The task runs outside the transaction of the calling thread, if any, but on the shard the calling thread
+     * is bound to, if any.
+     *
+     * @param task the task to run
+     * @param <T> the type of the result of the task
+     * @return a future completed with the result of the task, or exceptionally with the exception it throws
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Callable<T> task) {
+        AsyncGate gate = asyncGate;
+        if (gate == null) gate = asyncGate();
+        Integer shard = SHARD.get();
+        return gate.submit(shard == null ? task : () -> onShard(shard, task));
+    }
+
+    private static synchronized AsyncGate asyncGate() {
+        if (asyncGate == null) asyncGate = new AsyncGate(asyncExecutor(), maxPoolSize);
+        return asyncGate;
+    }
+
+    private static synchronized Executor asyncExecutor() {
+        if (asyncExecutor == null) asyncExecutor = AsyncGate.defaultExecutor();
+        return asyncExecutor;
+    }
+
+    /**
+     * @return the number of borrowed, idle and pending connections and the acquisition wait times of the pool,
+     * or null if no connection was requested yet
+     */
+    public static synchronized PoolStats poolStats() {
+        return pool == null ? null : pool.stats();
+    }
+
+    /**
+     * Closes the connection pool. The idle connections are closed, the borrowed ones when they are released,
+     * and the next connection request creates a new pool.
+     */
+    public static synchronized void shutdown() {
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+        if (replicas != null) {
+            replicas.close();
+            replicas = null;
+        }
+        if (shards != null) {
+            shards.close();
+            shards = null;
+        }
+    }
+
+    /**
+     * Configures read replicas of the database, reached with the URL, database name and credentials of the primary.
+     * The queries of QueryBuilder, CompiledQuery and Model.findById() are sent to the least busy replica,
+     * while writes, transactions and the statements prepared with prepareStatement() or getConnection() go to
+     * the primary. Each replica has its own pool, configured like the pool of the primary.
+     * Replaces the current replicas; calling it without hosts sends every statement to the primary again.
+     *
+     * @param maxLag               the replication delay above which a replica is skipped until it catches up,
+     *                             checked every few seconds, Duration.ZERO to never check it
+     * @param readYourWritesWindow how long the reads of a thread go to the primary after it sent a statement to it,
+     *                             so that it reads its own writes, Duration.ZERO to always read from the replicas
+     * @param hosts                the hosts of the replicas
+     */
+    public static synchronized void configureReplicas(Duration maxLag, Duration readYourWritesWindow, String... hosts) {
+        if (replicas != null) {
+            replicas.close();
+            replicas = null;
+        }
+        replicaHosts = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(hosts)));
+        maxReplicaLag = maxLag;
+        readYourWritesNanos = readYourWritesWindow.toNanos();
+    }
+
+    /**
+     * @return the pool statistics of every replica, keyed by host, empty if no replica is configured
+     * or no read was sent yet
+     */
+    public static synchronized Map<String, PoolStats> replicaPoolStats() {
+        return replicas == null ? Collections.emptyMap() : replicas.stats();
+    }
+
+    /**
+     * Configures the shards of the tables declaring a shard key with @Table, reached with the URL, database name and
+     * credentials of the primary. The rows of a sharded table are spread over the shards by the strategy of its
+     * shard key; the other tables stay on the primary. Each shard has its own pool, configured like the pool of the
+     * primary. The shard of a row depends on the number of shards, so changing it requires moving the rows.
+     * Replaces the current shards; calling it without hosts sends every statement to the primary again.
+     *
+     * @param hosts the hosts of the shards, the index of a shard being its position
+     */
+    public static synchronized void configureShards(String... hosts) {
+        if (shards != null) {
+            shards.close();
+            shards = null;
+        }
+        shardHosts = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(hosts)));
+    }
+
+    /**
+     * @return the number of configured shards, 0 if the tables are not sharded
+     */
+    public static int shardCount() {
+        return shardHosts.size();
+    }
+
+    /**
+     * @return the pool statistics of every shard, keyed by host in shard order, empty if no shard is configured
+     * or no statement was sent to a shard yet
+     */
+    public static synchronized Map<String, PoolStats> shardPoolStats() {
+        return shards == null ? Collections.emptyMap() : shards.stats();
+    }
+
+    /**
+     * Binds the current thread to a shard until the returned scope is closed: every statement prepared through
+     * Connection on the thread, transactions and getConnection() included, runs on the pool of the shard, and the
+     * queries of sharded tables read that shard only. Model writes still go to the shard of their shard key.
+     *
+     * @param shard the index of the shard
+     * @return the scope of the binding, to be closed on the same thread, typically with try-with-resources
+     * @throws IllegalArgumentException if no shard has the given index
+     * @throws IllegalStateException if the thread runs a transaction on another shard or on the primary
+     */
+    public static ShardScope useShard(int shard) {
+        int count = shardHosts.size();
+        if (shard < 0 || shard >= count) {
+            throw new IllegalArgumentException("Shard " + shard + " does not exist, " + count + " shards are configured");
+        }
+        Transaction transaction = TRANSACTION.get();
+        if (transaction != null && transaction.shard() != shard) {
+            throw new IllegalStateException("The transaction of the current thread runs on "
+                    + (transaction.shard() < 0 ? "the primary" : "shard " + transaction.shard()) + " and cannot reach shard " + shard);
+        }
+        ShardScope scope = new ShardScope(SHARD.get());
+        SHARD.set(shard);
+        return scope;
+    }
+
+    static void restoreShard(Integer previous) {
+        if (previous == null) {
+            SHARD.remove();
+        } else {
+            SHARD.set(previous);
+        }
+    }
+
+    /**
+     * @return the index of the shard the current thread is bound to by useShard() or onShard(), or -1 if it is not bound
+     */
+    public static int currentShard() {
+        Integer shard = SHARD.get();
+        return shard == null ? -1 : shard;
+    }
+
+    /**
+     * Runs the given work with the current thread bound to a shard, see useShard(int).
+     *
+     * @param shard the index of the shard
+     * @param work  the work to run on the shard
+     * @param <T> the type of the result of the work
+     * @return the result of the work
+     * @throws Exception the exception thrown by the work
+     * @throws IllegalArgumentException if no shard has the given index
+     * @throws IllegalStateException if the thread runs a transaction on another shard or on the primary
+     */
+    public static <T> T onShard(int shard, Callable<T> work) throws Exception {
+        ShardScope scope = useShard(shard);
+        try {
+            return work.call();
+        } finally {
+            scope.close();
+        }
+    }
+
+    /**
+     * Runs the given work on each of the given shards in parallel: on the calling thread for the first shard,
+     * and on the async executor for the others, outside the concurrency limit of supplyAsync() so that an async
+     * task can fan out without waiting for its own permits. Waits for every shard before returning.
+     *
+     * @param shardIndexes the indexes of the shards
+     * @param work         the work to run on each shard
+     * @param <T> the type of the result of the work
+     * @return the result of the work on each shard, in the order of the given indexes
+     * @throws Exception the exception thrown by the work on the first failed shard, in the order of the given indexes
+     * @throws IllegalArgumentException if no shard has one of the given indexes
+     * @throws IllegalStateException if the current thread runs a transaction and several shards are given
+     */
+    public static <T> List<T> onShards(int[] shardIndexes, Callable<T> work) throws Exception {
+        if (shardIndexes.length == 1) return Collections.singletonList(onShard(shardIndexes[0], work));
+        if (TRANSACTION.get() != null) throw new IllegalStateException("A transaction cannot span several shards");
+        for (int shard : shardIndexes) {
+            if (shard < 0 || shard >= shardHosts.size()) {
+                throw new IllegalArgumentException("Shard " + shard + " does not exist, " + shardHosts.size() + " shards are configured");
             }
+        }
 
-            int retries = 0;
-            while (retries < MAX_RETRIES) {
-                try {
-                    connection = DriverManager.getConnection(url + host + "/" + database, user, password);
-                    break;
-                } catch (SQLException e) {
-                    retries++;
-                    if (retries == MAX_RETRIES) {
-                        throw new SQLException("Unable to connect to the database after " + MAX_RETRIES + " attempts.", e);
-                    }
+        Executor executor = asyncExecutor();
+        List<CompletableFuture<T>> others = new ArrayList<>(shardIndexes.length);
+        for (int i = 1; i < shardIndexes.length; i++) {
+            int shard = shardIndexes[i];
+            CompletableFuture<T> future = new CompletableFuture<>();
+            try {
+                executor.execute(() -> {
                     try {
-                        Thread.sleep(RETRY_DELAY);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
+                        future.complete(onShard(shard, work));
+                    } catch (Throwable e) {
+                        future.completeExceptionally(e);
                     }
+                });
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+            others.add(future);
+        }
+
+        List<T> results = new ArrayList<>(shardIndexes.length);
+        Throwable failure = null;
+        try {
+            results.add(onShard(shardIndexes[0], work));
+        } catch (Exception | Error e) {
+            failure = e;
+        }
+        for (CompletableFuture<T> future : others) {
+            try {
+                results.add(future.join());
+            } catch (CompletionException e) {
+                if (failure == null) failure = e.getCause();
+            }
+        }
+
+        if (failure instanceof Exception) throw (Exception) failure;
+        if (failure != null) throw (Error) failure;
+        return results;
+    }
+
+    /**
+     * Runs the given work on every shard in parallel, see onShards(int[], Callable).
+     *
+     * @param work the work to run on each shard
+     * @param <T> the type of the result of the work
+     * @return the result of the work on each shard, in shard order
+     * @throws Exception the exception thrown by the work on the first failed shard, in shard order
+     * @throws IllegalStateException if no shard is configured, or if the current thread runs a transaction
+     * and several shards are configured
+     */
+    public static <T> List<T> onEveryShard(Callable<T> work) throws Exception {
+        int count = shardHosts.size();
+        if (count == 0) throw new IllegalStateException("No shard is configured");
+        int[] every = new int[count];
+        for (int i = 0; i < count; i++) {
+            every[i] = i;
+        }
+        return onShards(every, work);
+    }
+
+    /**
+     * Sets the maximum number of idle prepared statements cached per connection, 256 by default.
+     * A size of 0 disables the cache, so every statement is prepared and closed by its caller.
+     * Takes effect for the connections established afterwards.
+     *
+     * @param maxSize the maximum number of cached statements
+     */
+    public static void configureStatementCache(int maxSize) {
+        if (maxSize < 0) throw new IllegalArgumentException("Statement cache size cannot be negative");
+        statementCacheSize = maxSize;
+    }
+
+    /**
+     * @return the hit, miss and eviction counters of the prepared statement caches summed over the pooled
+     * connections of the primary, the replicas and the shards, or null if no connection was requested yet
+     */
+    public static synchronized CacheStats statementCacheStats() {
+        List<ConnectionPool> pools = new ArrayList<>();
+        if (pool != null) pools.add(pool);
+        if (replicas != null) pools.addAll(replicas.pools());
+        if (shards != null) pools.addAll(shards.pools());
+        return pools.isEmpty() ? null : ConnectionPool.statementCacheStats(pools);
+    }
+
+    /**
+     * Prepares a statement on a pooled connection of the primary, or of the shard the current thread is bound to,
+     * reusing a cached one of the same SQL when available.
+     * The connection stays borrowed until the statement is closed: closing the returned statement gives it back
+     * to the cache of the connection and the connection back to the pool.
+     * Inside Connection.inTransaction(), the statement is prepared on the connection of the transaction,
+     * after the queued writes are flushed.
+     *
+     * @param sql the SQL of the statement
+     * @return the prepared statement, to be closed once used
+     * @throws SQLException if the connection cannot be established or the statement cannot be prepared
+     */
+    public static PreparedStatement prepareStatement(String sql) throws SQLException {
+        Transaction transaction = TRANSACTION.get();
+        if (transaction != null) return transaction.prepare(sql);
+
+        markWrite();
+        return prepare(writePool(), (cache, onRelease) -> cache.prepare(sql, onRelease));
+    }
+
+    /**
+     * Same as prepareStatement(String) for a statement returning the keys generated by the database.
+     *
+     * @param sql               the SQL of the statement
+     * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS
+     * @return the prepared statement, to be closed once used
+     * @throws SQLException if the connection cannot be established or the statement cannot be prepared
+     */
+    public static PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        Transaction transaction = TRANSACTION.get();
+        if (transaction != null) return transaction.prepare(sql, autoGeneratedKeys);
+
+        markWrite();
+        return prepare(writePool(), (cache, onRelease) -> cache.prepare(sql, autoGeneratedKeys, onRelease));
+    }
+
+    /**
+     * Same as prepareStatement(String) for a statement producing result sets of the given type and concurrency.
+     *
+     * @param sql                  the SQL of the statement
+     * @param resultSetType        a ResultSet type constant
+     * @param resultSetConcurrency a ResultSet concurrency constant
+     * @return the prepared statement, to be closed once used
+     * @throws SQLException if the connection cannot be established or the statement cannot be prepared
+     */
+    public static PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        Transaction transaction = TRANSACTION.get();
+        if (transaction != null) return transaction.prepare(sql, resultSetType, resultSetConcurrency);
+
+        markWrite();
+        return prepare(writePool(), (cache, onRelease) -> cache.prepare(sql, resultSetType, resultSetConcurrency, onRelease));
+    }
+
+    /**
+     * Prepares a read-only query on a pooled connection of the shard the current thread is bound to, if any,
+     * otherwise of the least busy replica, or of the primary if no replica is configured or within the lag limit,
+     * or if the current thread wrote to the primary within the read-your-writes window. Inside Connection.inTransaction(), the query runs on the connection of the transaction.
+     * Closing the returned statement gives the connection back to its pool.
+     *
+     * @param sql the SQL of the query
+     * @return the prepared statement, to be closed once used
+     * @throws SQLException if the connection cannot be established or the statement cannot be prepared
+     */
+    public static PreparedStatement prepareRead(String sql) throws SQLException {
+        Transaction transaction = TRANSACTION.get();
+        if (transaction != null) return transaction.prepare(sql);
+        return prepare(readPool(), (cache, onRelease) -> cache.prepare(sql, onRelease));
+    }
+
+    /**
+     * Same as prepareRead(String) for a query producing result sets of the given type and concurrency.
+     *
+     * @param sql                  the SQL of the query
+     * @param resultSetType        a ResultSet type constant
+     * @param resultSetConcurrency a ResultSet concurrency constant
+     * @return the prepared statement, to be closed once used
+     * @throws SQLException if the connection cannot be established or the statement cannot be prepared
+     */
+    public static PreparedStatement prepareRead(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        Transaction transaction = TRANSACTION.get();
+        if (transaction != null) return transaction.prepare(sql, resultSetType, resultSetConcurrency);
+        return prepare(readPool(), (cache, onRelease) -> cache.prepare(sql, resultSetType, resultSetConcurrency, onRelease));
+    }
+
+    /**
+     * Prepares a statement on the statement cache of a connection borrowed from the given pool, the connection being
+     * released when the statement is closed, or right away if it cannot be prepared.
+     */
+    private static PreparedStatement prepare(ConnectionPool pool, Preparer preparer) throws SQLException {
+        PooledConnection connection = pool.borrow();
+        try {
+            return preparer.prepare(connection.getStatementCache(), () -> pool.release(connection));
+        } catch (SQLException | RuntimeException e) {
+            pool.release(connection);
+            throw e;
+        }
+    }
+
+    private interface Preparer {
+        PreparedStatement prepare(StatementCache cache, Runnable onRelease) throws SQLException;
+    }
+
+    /**
+     * @return the pool of the shard the current thread is bound to, or the pool of the primary
+     * @throws SQLException if the database connection parameters are not configured
+     */
+    private static ConnectionPool writePool() throws SQLException {
+        Integer shard = SHARD.get();
+        return shard == null ? pool() : shardPool(shard);
+    }
+
+    /**
+     * @return the pool of the shard the current thread is bound to, otherwise the pool of the replica serving
+     * the next read, or the pool of the primary
+     * @throws SQLException if the database connection parameters are not configured
+     */
+    private static ConnectionPool readPool() throws SQLException {
+        Integer shard = SHARD.get();
+        if (shard != null) return shardPool(shard);
+
+        ConnectionPool primary = pool();
+        if (replicaHosts.isEmpty()) return primary;
+
+        long window = readYourWritesNanos;
+        Long lastWrite = LAST_WRITE.get();
+        if (window > 0 && lastWrite != null && System.nanoTime() - lastWrite < window) return primary;
+
+        ReplicaSet current = replicas;
+        if (current == null) current = createReplicas();
+        ConnectionPool replica = current.select();
+        return replica != null ? replica : primary;
+    }
+
+    private static synchronized ReplicaSet createReplicas() {
+        if (replicas == null) {
+            replicas = new ReplicaSet(replicaHosts, replicaHost -> new ConnectionPool(() -> open(replicaHost),
+                    minPoolSize, maxPoolSize, acquireTimeout, idleTimeout, maxLifetime, leakDetectionThreshold), maxReplicaLag);
+        }
+        return replicas;
+    }
+
+    private static ConnectionPool shardPool(int shard) throws SQLException {
+        ShardSet current = shards;
+        if (current == null) current = createShards();
+        return current.pool(shard);
+    }
+
+    private static synchronized ShardSet createShards() throws SQLException {
+        requireConfigured();
+        if (shards == null) {
+            shards = new ShardSet(shardHosts, shardHost -> new ConnectionPool(() -> open(shardHost),
+                    minPoolSize, maxPoolSize, acquireTimeout, idleTimeout, maxLifetime, leakDetectionThreshold));
+        }
+        return shards;
+    }
+
+    /**
+     * Records that the current thread sent a statement to the primary, starting its read-your-writes window.
+     */
+    private static void markWrite() {
+        if (readYourWritesNanos > 0) LAST_WRITE.set(System.nanoTime());
+    }
+
+    /**
+     * Runs the given work in a transaction bound to the current thread, and returns its result.
+     * The statements prepared through Connection by the work, including the writes and queries of the models,
+     * run on one pooled connection with auto-commit disabled, and the writes of the models are queued as
+     * JDBC batches (see Transaction). The transaction is committed when the work returns, and rolled back
+     * if it throws, the exception being rethrown.
+     * A nested call runs its work within a savepoint of the enclosing transaction: if the nested work throws,
+     * only its writes are rolled back.
+     * Within useShard() or onShard(), the transaction runs on the shard, and cannot reach another shard.
+     *
+     * @param work the unit of work
+     * @param <T> the type of the result of the work
+     * @return the result of the work
+     * @throws Exception the exception thrown by the work, or an SQLException if the transaction cannot be committed
+     */
+    public static <T> T inTransaction(Callable<T> work) throws Exception {
+        Transaction current = TRANSACTION.get();
+        if (current != null) return current.runNested(work);
+
+        ConnectionPool pool = writePool();
+        PooledConnection connection = pool.borrow();
+        Transaction transaction = new Transaction(connection, currentShard());
+        TRANSACTION.set(transaction);
+        try {
+            return transaction.run(work);
+        } finally {
+            TRANSACTION.remove();
+            markWrite();
+            pool.release(connection);
+        }
+    }
+
+    /**
+     * Same as inTransaction(Callable) for a unit of work that returns no value.
+     *
+     * @param work the unit of work
+     * @throws Exception the exception thrown by the work, or an SQLException if the transaction cannot be committed
+     */
+    public static void inTransaction(Transaction.Work work) throws Exception {
+        inTransaction(() -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * @return the transaction bound to the current thread by Connection.inTransaction(), or null if there is none
+     */
+    public static Transaction currentTransaction() {
+        return TRANSACTION.get();
+    }
+
+    /**
+     * Borrows a connection from the pool of the primary, or of the shard the current thread is bound to,
+     * waiting at most the acquire timeout for one to be released if the pool is at its maximum size. Closing the returned connection gives it back to the pool,
+     * so it must be closed once used, typically with try-with-resources.
+     * Inside Connection.inTransaction(), returns the connection of the transaction, after the queued writes
+     * are flushed; closing it leaves it bound to the transaction.
+     *
+     * @return A java.sql.Connection object to be closed once used.
+     * @throws SQLException if the database connection parameters are not configured,
+     * if no connection was released within the acquire timeout, or if unable to connect to the database
+     * after the maximum number of retries.
+     */
+    public static java.sql.Connection getConnection() throws SQLException {
+        Transaction transaction = TRANSACTION.get();
+        if (transaction != null) return transaction.handle();
+        markWrite();
+
+        ConnectionPool pool = writePool();
+        PooledConnection connection = pool.borrow();
+        return connection.handle(() -> pool.release(connection));
+    }
+
+    /**
+     * Returns the connection pool, created with the configured settings on the first request.
+     * Once created, it is read without locking, so that concurrent callers, virtual threads included,
+     * do not contend on the monitor of this class.
+     *
+     * @return the connection pool
+     * @throws SQLException if the database connection parameters are not configured
+     */
+    private static ConnectionPool pool() throws SQLException {
+        ConnectionPool current = pool;
+        return current != null ? current : createPool();
+    }
+
+    private static synchronized ConnectionPool createPool() throws SQLException {
+        requireConfigured();
+        if (pool == null) {
+            pool = new ConnectionPool(() -> open(host), minPoolSize, maxPoolSize, acquireTimeout, idleTimeout,
+                    maxLifetime, leakDetectionThreshold);
+        }
+        return pool;
+    }
+
+    private static void requireConfigured() throws SQLException {
+        if (url == null || host == null || database == null || user == null || password == null) {
+            throw new SQLException("Database connection parameters are not configured.");
+        }
+    }
+
+    /**
+     * Establishes a physical connection using the configured parameters. It retries
+     * connecting a maximum number of times with a delay between each retry.
+     *
+     * @param dbHost the host of the primary, of a replica or of a shard
+     * @return the new connection, with its own statement cache
+     * @throws SQLException if unable to connect to the database after the maximum number of retries.
+     */
+    private static PooledConnection open(String dbHost) throws SQLException {
+        Properties connectionProperties = new Properties();
+        String jdbcUrl;
+        synchronized (Connection.class) {
+            connectionProperties.putAll(properties);
+            connectionProperties.setProperty("user", user);
+            connectionProperties.setProperty("password", password);
+            jdbcUrl = url + dbHost + "/" + database;
+        }
+
+        int retries = 0;
+        while (true) {
+            try {
+                return new PooledConnection(DriverManager.getConnection(jdbcUrl, connectionProperties), statementCacheSize);
+            } catch (SQLException e) {
+                retries++;
+                if (retries == MAX_RETRIES) {
+                    throw new SQLException("Unable to connect to the database after " + MAX_RETRIES + " attempts.", e);
+                }
+                try {
+                    Thread.sleep(RETRY_DELAY);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
                 }
             }
         }
-        return connection;
     }
 }
@@ -0,0 +1,287 @@
+package fr.flylonyx.jdorm.library.database;
+
+import fr.flylonyx.jdorm.library.cache.CacheStats;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool of physical connections behind Connection.
+ * At most maxSize connections are borrowed at once: a fair semaphore hands the permits out in arrival order,
+ * and a borrower waits at most the acquire timeout for one. Idle connections are reused most recently
+ * released first, checked before being lent, and retired once older than their maximum lifetime.
+ * A background task closes the connections idle for longer than the idle timeout down to minSize,
+ * opens connections up to minSize, and reports the connections borrowed for longer than the leak threshold.
+ */
+final class ConnectionPool {
+    private static final long[] WAIT_TIME_BOUNDS_MS = {1, 10, 100, 1000};
+    private static final long VALIDATION_IDLE_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long HOUSEKEEPING_PERIOD_MS = 5000;
+
+    /**
+     * Opens the physical connections of the pool.
+     */
+    interface Factory {
+        PooledConnection create() throws SQLException;
+    }
+
+    private final Factory factory;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutNanos;
+    private final long idleTimeoutNanos;
+    private final long maxLifetimeNanos;
+    private final long leakThresholdNanos;
+
+    private final Semaphore permits;
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final Set<PooledConnection> active = ConcurrentHashMap.newKeySet();
+    private final Set<PooledConnection> all = ConcurrentHashMap.newKeySet();
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder[] waitTimes = new LongAdder[WAIT_TIME_BOUNDS_MS.length + 1];
+    private final ScheduledExecutorService housekeeper;
+    private boolean closed;
+
+    ConnectionPool(Factory factory, int minSize, int maxSize, Duration acquireTimeout, Duration idleTimeout,
+                   Duration maxLifetime, Duration leakDetectionThreshold) {
+        this.factory = factory;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutNanos = acquireTimeout.toNanos();
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.maxLifetimeNanos = maxLifetime.toNanos();
+        this.leakThresholdNanos = leakDetectionThreshold.toNanos();
+        this.permits = new Semaphore(maxSize, true);
+        for (int i = 0; i < waitTimes.length; i++) {
+            waitTimes[i] = new LongAdder();
+        }
+
+        housekeeper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "jdorm-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        housekeeper.scheduleWithFixedDelay(this::housekeep, 0, HOUSEKEEPING_PERIOD_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection, waiting for one to be released if maxSize connections are already borrowed.
+     * The connection must be given back with release().
+     *
+     * @return a usable connection
+     * @throws SQLException if no connection was released within the acquire timeout,
+     * or a new connection cannot be established
+     */
+    PooledConnection borrow() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                timeouts.increment();
+                throw new SQLException("Timed out after " + TimeUnit.NANOSECONDS.toMillis(acquireTimeoutNanos)
+                        + " ms waiting for a connection (" + active.size() + " borrowed, "
+                        + permits.getQueueLength() + " waiting)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+
+        PooledConnection connection;
+        try {
+            connection = takeIdle();
+            if (connection == null) connection = open();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+
+        recordWaitTime(System.nanoTime() - start);
+        connection.borrowed(leakThresholdNanos > 0);
+        active.add(connection);
+        return connection;
+    }
+
+    /**
+     * Gives a borrowed connection back to the pool, after resetting its state, or closes it if it is broken,
+     * expired or the pool is closed.
+     *
+     * @param connection a connection returned by borrow()
+     */
+    void release(PooledConnection connection) {
+        if (!active.remove(connection)) return;
+        try {
+            boolean reusable = connection.released() && !connection.isExpired(maxLifetimeNanos);
+            synchronized (this) {
+                if (reusable && !closed) {
+                    idle.addFirst(connection);
+                    return;
+                }
+            }
+            discard(connection);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * @return the number of borrowed and idle connections, waiting borrowers and acquisition counters
+     */
+    PoolStats stats() {
+        int idleCount;
+        synchronized (this) {
+            idleCount = idle.size();
+        }
+        long[] histogram = new long[waitTimes.length];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = waitTimes[i].sum();
+        }
+        return new PoolStats(active.size(), idleCount, permits.getQueueLength(), acquired.sum(), timeouts.sum(),
+                WAIT_TIME_BOUNDS_MS, histogram);
+    }
+
+    /**
+     * @return the number of connections currently borrowed
+     */
+    int activeCount() {
+        return active.size();
+    }
+
+    /**
+     * @param pools the pools to sum the counters of
+     * @return the prepared statement cache counters summed over the open connections of the given pools
+     */
+    static CacheStats statementCacheStats(List<ConnectionPool> pools) {
+        long hits = 0, misses = 0, evictions = 0;
+        int size = 0;
+        for (ConnectionPool pool : pools) {
+            for (PooledConnection connection : pool.all) {
+                CacheStats stats = connection.getStatementCache().stats();
+                hits += stats.getHitCount();
+                misses += stats.getMissCount();
+                evictions += stats.getEvictionCount();
+                size += stats.getSize();
+            }
+        }
+        return new CacheStats(hits, misses, evictions, size);
+    }
+
+    /**
+     * Stops the background task and closes the idle connections. Borrowed connections are closed
+     * when they are released.
+     */
+    void close() {
+        housekeeper.shutdownNow();
+        List<PooledConnection> connections;
+        synchronized (this) {
+            closed = true;
+            connections = new ArrayList<>(idle);
+            idle.clear();
+        }
+        for (PooledConnection connection : connections) {
+            discard(connection);
+        }
+    }
+
+    /**
+     * Takes the most recently released idle connection that is still usable, closing the others on the way.
+     *
+     * @return an idle connection, or null if there is none
+     */
+    private PooledConnection takeIdle() {
+        while (true) {
+            PooledConnection connection;
+            synchronized (this) {
+                connection = idle.pollFirst();
+            }
+            if (connection == null) return null;
+            if (!connection.isExpired(maxLifetimeNanos) && connection.validate(VALIDATION_IDLE_NANOS)) {
+                return connection;
+            }
+            discard(connection);
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        PooledConnection connection = factory.create();
+        all.add(connection);
+        return connection;
+    }
+
+    private void discard(PooledConnection connection) {
+        all.remove(connection);
+        connection.close();
+    }
+
+    private void recordWaitTime(long nanos) {
+        acquired.increment();
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (bucket < WAIT_TIME_BOUNDS_MS.length && millis >= WAIT_TIME_BOUNDS_MS[bucket]) {
+            bucket++;
+        }
+        waitTimes[bucket].increment();
+    }
+
+    /**
+     * Closes the idle connections that expired or stayed idle for longer than the idle timeout while more
+     * than minSize connections are open, opens connections up to minSize and reports leaked connections.
+     * Connections are only opened while a permit is free, so the pool never exceeds maxSize.
+     */
+    private void housekeep() {
+        List<PooledConnection> evicted = new ArrayList<>();
+        synchronized (this) {
+            if (closed) return;
+            Iterator<PooledConnection> oldest = idle.descendingIterator();
+            while (oldest.hasNext()) {
+                PooledConnection connection = oldest.next();
+                boolean idleTooLong = idleTimeoutNanos > 0 && connection.idleNanos() >= idleTimeoutNanos
+                        && all.size() - evicted.size() > minSize;
+                if (idleTooLong || connection.isExpired(maxLifetimeNanos)) {
+                    oldest.remove();
+                    evicted.add(connection);
+                }
+            }
+        }
+        for (PooledConnection connection : evicted) {
+            discard(connection);
+        }
+
+        while (all.size() < minSize && permits.tryAcquire()) {
+            try {
+                PooledConnection connection = open();
+                connection.released();
+                synchronized (this) {
+                    if (closed) {
+                        discard(connection);
+                        return;
+                    }
+                    idle.addFirst(connection);
+                }
+            } catch (SQLException e) {
+                System.err.println("Unable to open a pooled connection: " + e.getMessage());
+                break;
+            } finally {
+                permits.release();
+            }
+        }
+
+        if (leakThresholdNanos > 0) {
+            for (PooledConnection connection : active) {
+                connection.reportLeak(leakThresholdNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package fr.flylonyx.jdorm.library.database;
+
+import java.util.Arrays;
+
+/**
+ * Immutable snapshot of the state and counters of the connection pool.
+ * Acquisition wait times are counted in buckets: bucket i counts the acquisitions that waited less than
+ * getWaitTimeBucketBounds()[i] milliseconds, and the last bucket those that waited longer than every bound.
+ */
+public final class PoolStats {
+    private final int activeCount;
+    private final int idleCount;
+    private final int pendingCount;
+    private final long acquireCount;
+    private final long timeoutCount;
+    private final long[] waitTimeBucketBounds;
+    private final long[] waitTimeHistogram;
+
+    public PoolStats(int activeCount, int idleCount, int pendingCount, long acquireCount, long timeoutCount,
+                     long[] waitTimeBucketBounds, long[] waitTimeHistogram) {
+        this.activeCount = activeCount;
+        this.idleCount = idleCount;
+        this.pendingCount = pendingCount;
+        this.acquireCount = acquireCount;
+        this.timeoutCount = timeoutCount;
+        this.waitTimeBucketBounds = waitTimeBucketBounds.clone();
+        this.waitTimeHistogram = waitTimeHistogram.clone();
+    }
+
+    /**
+     * @return the number of connections currently borrowed
+     */
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    /**
+     * @return the number of open connections waiting in the pool to be borrowed
+     */
+    public int getIdleCount() {
+        return idleCount;
+    }
+
+    /**
+     * @return the number of threads waiting for a connection because the pool is at its maximum size
+     */
+    public int getPendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * @return the number of connections borrowed since the pool was created
+     */
+    public long getAcquireCount() {
+        return acquireCount;
+    }
+
+    /**
+     * @return the number of acquisitions that gave up after the acquire timeout
+     */
+    public long getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    /**
+     * @return the upper bounds, in milliseconds, of the wait time buckets
+     */
+    public long[] getWaitTimeBucketBounds() {
+        return waitTimeBucketBounds.clone();
+    }
+
+    /**
+     * @return the number of acquisitions per wait time bucket, one more than the number of bounds
+     */
+    public long[] getWaitTimeHistogram() {
+        return waitTimeHistogram.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "PoolStats{active=" + activeCount + ", idle=" + idleCount + ", pending=" + pendingCount
+                + ", acquired=" + acquireCount + ", timeouts=" + timeoutCount
+                + ", waitTimeBoundsMs=" + Arrays.toString(waitTimeBucketBounds)
+                + ", waitTimeHistogram=" + Arrays.toString(waitTimeHistogram) + "}";
+    }
+}
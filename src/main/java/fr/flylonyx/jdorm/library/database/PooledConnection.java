@@ -0,0 +1,198 @@
+package fr.flylonyx.jdorm.library.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+
+/**
+ * A physical connection owned by the ConnectionPool, with its own prepared statement cache and the
+ * timestamps the pool uses to retire it, evict it when idle and detect it being held for too long.
+ */
+final class PooledConnection {
+    private static final Class<?>[] INTERFACES = {java.sql.Connection.class};
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+    private final java.sql.Connection connection;
+    private final StatementCache statementCache;
+    private final long createdAt = System.nanoTime();
+    private volatile long releasedAt = createdAt;
+    private volatile long borrowedAt;
+    private volatile Throwable borrowTrace;
+    private volatile boolean leakReported;
+
+    /**
+     * @param connection         the physical connection
+     * @param statementCacheSize the maximum number of idle prepared statements cached on the connection
+     */
+    PooledConnection(java.sql.Connection connection, int statementCacheSize) {
+        this.connection = connection;
+        this.statementCache = new StatementCache(connection, statementCacheSize);
+    }
+
+    java.sql.Connection getConnection() {
+        return connection;
+    }
+
+    StatementCache getStatementCache() {
+        return statementCache;
+    }
+
+    /**
+     * @param maxLifetimeNanos the maximum lifetime of a connection, 0 for no limit
+     * @return true if the connection was established longer ago than the maximum lifetime
+     */
+    boolean isExpired(long maxLifetimeNanos) {
+        return maxLifetimeNanos > 0 && System.nanoTime() - createdAt >= maxLifetimeNanos;
+    }
+
+    /**
+     * @return the number of nanoseconds since the connection was last given back to the pool
+     */
+    long idleNanos() {
+        return System.nanoTime() - releasedAt;
+    }
+
+    /**
+     * @return the number of nanoseconds since the connection was borrowed
+     */
+    long borrowedNanos() {
+        return System.nanoTime() - borrowedAt;
+    }
+
+    /**
+     * Checks that the connection can still be used before it is lent. A connection given back recently is
+     * only checked for being open; one idle for longer is checked with a round trip to the database.
+     *
+     * @param roundTripAfterNanos the idle time after which the check goes to the database
+     * @return true if the connection is usable
+     */
+    boolean validate(long roundTripAfterNanos) {
+        try {
+            if (idleNanos() < roundTripAfterNanos) return !connection.isClosed();
+            return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Marks the connection as lent, recording the stack of the borrower when leak detection is enabled.
+     *
+     * @param traceBorrower true to record the stack of the borrower
+     */
+    void borrowed(boolean traceBorrower) {
+        borrowedAt = System.nanoTime();
+        borrowTrace = traceBorrower ? new Throwable("Connection borrowed here") : null;
+        leakReported = false;
+    }
+
+    /**
+     * Marks the connection as given back and resets the state its borrower may have changed:
+     * an open transaction is rolled back and auto-commit is restored.
+     *
+     * @return true if the connection can be lent again, false if it is broken
+     */
+    boolean released() {
+        try {
+            if (connection.isClosed()) return false;
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            connection.clearWarnings();
+        } catch (SQLException e) {
+            return false;
+        }
+        borrowTrace = null;
+        releasedAt = System.nanoTime();
+        return true;
+    }
+
+    /**
+     * Reports the connection as leaked once per borrow, if it has been held for longer than the threshold.
+     *
+     * @param thresholdNanos the time after which a borrowed connection is reported
+     */
+    void reportLeak(long thresholdNanos) {
+        Throwable trace = borrowTrace;
+        if (leakReported || trace == null || borrowedNanos() < thresholdNanos) return;
+        leakReported = true;
+        System.err.println("Possible connection leak: a connection has been borrowed for "
+                + borrowedNanos() / 1_000_000 + " ms without being closed");
+        trace.printStackTrace();
+    }
+
+    /**
+     * Closes the cached statements and the physical connection.
+     */
+    void close() {
+        statementCache.close();
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // The connection is discarded either way.
+        }
+    }
+
+    /**
+     * Returns the connection handed to a caller of Connection.getConnection(): every call goes to the physical
+     * connection, except prepareStatement(), which uses the statement cache of the connection, and close(),
+     * which gives the connection back to the pool once.
+     *
+     * @param onClose run once when the caller closes the connection
+     * @return the connection handle
+     */
+    java.sql.Connection handle(Runnable onClose) {
+        return (java.sql.Connection) Proxy.newProxyInstance(PooledConnection.class.getClassLoader(), INTERFACES, new Handle(onClose));
+    }
+
+    private final class Handle implements InvocationHandler {
+        private final Runnable onClose;
+        private boolean closed;
+
+        private Handle(Runnable onClose) {
+            this.onClose = onClose;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        onClose.run();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return connection.toString();
+                default:
+                    if (closed) throw new SQLException("Connection is closed");
+                    if (method.getName().equals("prepareStatement") && args[0] instanceof String) {
+                        Class<?>[] types = method.getParameterTypes();
+                        if (types.length == 1) {
+                            return statementCache.prepare((String) args[0], null);
+                        }
+                        if (types.length == 2 && types[1] == int.class) {
+                            return statementCache.prepare((String) args[0], (Integer) args[1], null);
+                        }
+                        if (types.length == 3) {
+                            return statementCache.prepare((String) args[0], (Integer) args[1], (Integer) args[2], null);
+                        }
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package fr.flylonyx.jdorm.library.database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * The read replicas behind Connection, each with its own ConnectionPool.
+ * Reads go to the least busy replica, the one with the fewest borrowed connections, ties being broken
+ * round-robin. When a maximum lag is set, a background task reads the replication delay of every replica,
+ * and the replicas lagging behind the primary by more than the maximum, or whose replication is stopped,
+ * are skipped until they catch up.
+ */
+final class ReplicaSet {
+    private static final long LAG_CHECK_PERIOD_MS = 5000;
+
+    private final List<Replica> replicas;
+    private final long maxLagSeconds;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ScheduledExecutorService lagMonitor;
+
+    /**
+     * @param hosts       the hosts of the replicas
+     * @param poolFactory creates the connection pool of a replica host
+     * @param maxLag      the maximum replication delay of a replica serving reads, Duration.ZERO for no limit
+     */
+    ReplicaSet(List<String> hosts, Function<String, ConnectionPool> poolFactory, Duration maxLag) {
+        List<Replica> list = new ArrayList<>(hosts.size());
+        for (String replicaHost : hosts) {
+            list.add(new Replica(replicaHost, poolFactory.apply(replicaHost)));
+        }
+        this.replicas = Collections.unmodifiableList(list);
+        this.maxLagSeconds = maxLag.getSeconds();
+
+        if (maxLag.isZero() || replicas.isEmpty()) {
+            lagMonitor = null;
+        } else {
+            lagMonitor = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "jdorm-replica-lag-monitor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            lagMonitor.scheduleWithFixedDelay(this::checkLag, 0, LAG_CHECK_PERIOD_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return the pool of the least busy replica within the lag limit, or null if no replica can serve reads
+     */
+    ConnectionPool select() {
+        int size = replicas.size();
+        if (size == 0) return null;
+
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        Replica best = null;
+        int bestActive = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (lagMonitor != null && replica.lagSeconds > maxLagSeconds) continue;
+            int active = replica.pool.activeCount();
+            if (active < bestActive) {
+                best = replica;
+                bestActive = active;
+            }
+        }
+        return best == null ? null : best.pool;
+    }
+
+    /**
+     * @return the pools of the replicas
+     */
+    List<ConnectionPool> pools() {
+        List<ConnectionPool> pools = new ArrayList<>(replicas.size());
+        for (Replica replica : replicas) {
+            pools.add(replica.pool);
+        }
+        return pools;
+    }
+
+    /**
+     * @return the pool statistics of every replica, keyed by host
+     */
+    Map<String, PoolStats> stats() {
+        Map<String, PoolStats> stats = new LinkedHashMap<>();
+        for (Replica replica : replicas) {
+            stats.put(replica.host, replica.pool.stats());
+        }
+        return stats;
+    }
+
+    /**
+     * Stops the lag monitor and closes the pools of the replicas.
+     */
+    void close() {
+        if (lagMonitor != null) lagMonitor.shutdownNow();
+        for (Replica replica : replicas) {
+            replica.pool.close();
+        }
+    }
+
+    private void checkLag() {
+        for (Replica replica : replicas) {
+            replica.lagSeconds = readLag(replica.pool);
+        }
+    }
+
+    /**
+     * Reads the replication delay of a replica from SHOW REPLICA STATUS, or SHOW SLAVE STATUS before MySQL 8.0.22.
+     *
+     * @param pool the pool of the replica
+     * @return the delay in seconds, 0 if the server is not replicating, or Long.MAX_VALUE if the replication
+     * is stopped or the replica cannot be reached
+     */
+    private static long readLag(ConnectionPool pool) {
+        PooledConnection connection;
+        try {
+            connection = pool.borrow();
+        } catch (SQLException e) {
+            return Long.MAX_VALUE;
+        }
+        try (Statement stmt = connection.getConnection().createStatement()) {
+            ResultSet rs;
+            String column;
+            try {
+                rs = stmt.executeQuery("SHOW REPLICA STATUS");
+                column = "Seconds_Behind_Source";
+            } catch (SQLException e) {
+                rs = stmt.executeQuery("SHOW SLAVE STATUS");
+                column = "Seconds_Behind_Master";
+            }
+            try (ResultSet status = rs) {
+                if (!status.next()) return 0;
+                long lag = status.getLong(column);
+                return status.wasNull() ? Long.MAX_VALUE : lag;
+            }
+        } catch (SQLException e) {
+            return Long.MAX_VALUE;
+        } finally {
+            pool.release(connection);
+        }
+    }
+
+    private static final class Replica {
+        private final String host;
+        private final ConnectionPool pool;
+        private volatile long lagSeconds;
+
+        private Replica(String host, ConnectionPool pool) {
+            this.host = host;
+            this.pool = pool;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package fr.flylonyx.jdorm.library.database;
+
+/**
+ * Binding of the current thread to a shard, opened by Connection.useShard(). Closing it restores the binding
+ * the thread had before, so scopes can be nested. It must be closed on the thread that opened it,
+ * typically with try-with-resources.
+ */
+public final class ShardScope implements AutoCloseable {
+    private final Integer previous;
+    private boolean closed;
+
+    ShardScope(Integer previous) {
+        this.previous = previous;
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        Connection.restoreShard(previous);
+    }
+}
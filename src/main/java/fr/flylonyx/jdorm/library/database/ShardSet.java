@@ -0,0 +1,64 @@
+package fr.flylonyx.jdorm.library.database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The shards behind Connection, each with its own ConnectionPool, in the order of their index.
+ */
+final class ShardSet {
+    private final List<String> hosts;
+    private final List<ConnectionPool> pools;
+
+    /**
+     * @param hosts       the hosts of the shards, in shard order
+     * @param poolFactory creates the connection pool of a shard host
+     */
+    ShardSet(List<String> hosts, Function<String, ConnectionPool> poolFactory) {
+        List<ConnectionPool> list = new ArrayList<>(hosts.size());
+        for (String shardHost : hosts) {
+            list.add(poolFactory.apply(shardHost));
+        }
+        this.hosts = hosts;
+        this.pools = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * @param shard the index of a shard
+     * @return the pool of the shard
+     */
+    ConnectionPool pool(int shard) {
+        return pools.get(shard);
+    }
+
+    /**
+     * @return the pools of the shards, in shard order
+     */
+    List<ConnectionPool> pools() {
+        return pools;
+    }
+
+    /**
+     * @return the pool statistics of every shard, keyed by host, in shard order
+     */
+    Map<String, PoolStats> stats() {
+        Map<String, PoolStats> stats = new LinkedHashMap<>();
+        for (int i = 0; i < pools.size(); i++) {
+            stats.put(hosts.get(i), pools.get(i).stats());
+        }
+        return stats;
+    }
+
+    /**
+     * Closes the pools of the shards.
+     */
+    void close() {
+        for (ConnectionPool pool : pools) {
+            pool.close();
+        }
+    }
+}
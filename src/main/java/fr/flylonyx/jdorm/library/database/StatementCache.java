@@ -0,0 +1,236 @@
+package fr.flylonyx.jdorm.library.database;
+
+import fr.flylonyx.jdorm.library.cache.CacheStats;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of the prepared statements of one physical connection, keyed by SQL template and statement options.
+ * A statement is checked out of the cache while it is in use and returned to it when the caller closes it:
+ * its open result set is closed and its parameters, batch and fetch size are reset,
+ * so the next caller binds it from a clean state.
+ * When the cache is full, the least recently used idle statement is really closed.
+ * With MySQL server-side prepared statements (useServerPrepStmts=true), a cached statement is parsed by the server
+ * once and only re-executed afterwards.
+ */
+final class StatementCache {
+    private static final Class<?>[] INTERFACES = {PreparedStatement.class};
+
+    private final java.sql.Connection connection;
+    private final int maxSize;
+    private final Map<String, PreparedStatement> idle = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private boolean closed;
+
+    /**
+     * @param connection the physical connection the statements are prepared on
+     * @param maxSize    the maximum number of idle statements kept open, 0 disabling the cache
+     */
+    StatementCache(java.sql.Connection connection, int maxSize) {
+        this.connection = connection;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns a prepared statement of the given SQL, reused from the cache when an idle one is available.
+     * Closing the returned statement gives it back to the cache instead of closing it, then runs onRelease.
+     *
+     * @param sql       the SQL template of the statement
+     * @param onRelease run once when the caller closes the statement, or null
+     * @return the prepared statement, to be closed once used
+     * @throws SQLException if the statement cannot be prepared
+     */
+    PreparedStatement prepare(String sql, Runnable onRelease) throws SQLException {
+        return checkout(sql, sql, -1, -1, -1, onRelease);
+    }
+
+    /**
+     * Same as prepare(String, Runnable) for a statement returning the keys generated by the database.
+     *
+     * @param sql               the SQL template of the statement
+     * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS
+     * @param onRelease         run once when the caller closes the statement, or null
+     * @return the prepared statement, to be closed once used
+     * @throws SQLException if the statement cannot be prepared
+     */
+    PreparedStatement prepare(String sql, int autoGeneratedKeys, Runnable onRelease) throws SQLException {
+        return checkout("K" + autoGeneratedKeys + ":" + sql, sql, autoGeneratedKeys, -1, -1, onRelease);
+    }
+
+    /**
+     * Same as prepare(String, Runnable) for a statement producing result sets of the given type and concurrency.
+     *
+     * @param sql                  the SQL template of the statement
+     * @param resultSetType        a ResultSet type constant
+     * @param resultSetConcurrency a ResultSet concurrency constant
+     * @param onRelease            run once when the caller closes the statement, or null
+     * @return the prepared statement, to be closed once used
+     * @throws SQLException if the statement cannot be prepared
+     */
+    PreparedStatement prepare(String sql, int resultSetType, int resultSetConcurrency, Runnable onRelease) throws SQLException {
+        return checkout("R" + resultSetType + "," + resultSetConcurrency + ":" + sql, sql, -1, resultSetType, resultSetConcurrency, onRelease);
+    }
+
+    /**
+     * @return the hit, miss and eviction counters of the cache, and its number of idle statements
+     */
+    CacheStats stats() {
+        int size;
+        synchronized (this) {
+            size = idle.size();
+        }
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), size);
+    }
+
+    /**
+     * Closes every idle statement and stops caching: statements returned afterwards are closed.
+     */
+    void close() {
+        List<PreparedStatement> statements;
+        synchronized (this) {
+            closed = true;
+            statements = new ArrayList<>(idle.values());
+            idle.clear();
+        }
+        for (PreparedStatement statement : statements) {
+            closeQuietly(statement);
+        }
+    }
+
+    private PreparedStatement checkout(String key, String sql, int autoGeneratedKeys, int resultSetType, int resultSetConcurrency,
+                                       Runnable onRelease) throws SQLException {
+        PreparedStatement statement;
+        synchronized (this) {
+            statement = idle.remove(key);
+        }
+
+        if (statement != null && !statement.isClosed()) {
+            hits.increment();
+        } else {
+            misses.increment();
+            if (autoGeneratedKeys >= 0) {
+                statement = connection.prepareStatement(sql, autoGeneratedKeys);
+            } else if (resultSetType >= 0) {
+                statement = connection.prepareStatement(sql, resultSetType, resultSetConcurrency);
+            } else {
+                statement = connection.prepareStatement(sql);
+            }
+        }
+        if (maxSize <= 0 && onRelease == null) return statement;
+        return (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(), INTERFACES, new Lease(key, statement, onRelease));
+    }
+
+    /**
+     * Resets a statement given back by its caller and keeps it for the next caller of the same SQL,
+     * or closes it if the cache is disabled, closed or already holds an idle statement of the same SQL.
+     */
+    private void checkin(String key, PreparedStatement statement) {
+        if (maxSize <= 0) {
+            closeQuietly(statement);
+            return;
+        }
+        try {
+            ResultSet open = statement.getResultSet();
+            if (open != null) open.close();
+            statement.clearParameters();
+            statement.clearBatch();
+            statement.clearWarnings();
+            statement.setFetchSize(0);
+        } catch (SQLException e) {
+            closeQuietly(statement);
+            return;
+        }
+
+        PreparedStatement rejected = null;
+        List<PreparedStatement> evicted = new ArrayList<>(1);
+        synchronized (this) {
+            if (closed || idle.containsKey(key)) {
+                rejected = statement;
+            } else {
+                idle.put(key, statement);
+                Iterator<PreparedStatement> eldest = idle.values().iterator();
+                while (idle.size() > maxSize) {
+                    evicted.add(eldest.next());
+                    eldest.remove();
+                }
+            }
+        }
+
+        if (rejected != null) closeQuietly(rejected);
+        for (PreparedStatement stale : evicted) {
+            evictions.increment();
+            closeQuietly(stale);
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ignored) {
+            // The statement is discarded either way.
+        }
+    }
+
+    /**
+     * The statement handed to one caller: every call goes to the cached statement, except close(),
+     * which gives it back to the cache once and runs the release callback, after which the lease behaves
+     * as a closed statement.
+     */
+    private final class Lease implements InvocationHandler {
+        private final String key;
+        private final PreparedStatement statement;
+        private final Runnable onRelease;
+        private boolean released;
+
+        private Lease(String key, PreparedStatement statement, Runnable onRelease) {
+            this.key = key;
+            this.statement = statement;
+            this.onRelease = onRelease;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        try {
+                            checkin(key, statement);
+                        } finally {
+                            if (onRelease != null) onRelease.run();
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return released || statement.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return statement.toString();
+                default:
+                    if (released) throw new SQLException("Statement is closed");
+                    try {
+                        return method.invoke(statement, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
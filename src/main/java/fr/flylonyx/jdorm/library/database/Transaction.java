@@ -0,0 +1,281 @@
+package fr.flylonyx.jdorm.library.database;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * A database transaction bound to the thread running Connection.inTransaction().
+ * Every statement prepared through Connection on that thread runs on the connection of the transaction,
+ * and the writes of the models are queued as JDBC batches instead of being sent one by one: consecutive
+ * writes of the same SQL are sent together when a different statement is prepared, when 1000 rows are queued,
+ * when flush() is called and at commit. Generated ids are therefore only set back to saved models once their
+ * batch is flushed. Actions registered with afterCommit() run once the transaction is committed, and those
+ * registered with onRollback() run when the transaction, or the savepoint they were registered in, is rolled back.
+ * With MySQL, setting the driver property rewriteBatchedStatements=true sends each batch of inserts as one
+ * multi-row INSERT statement.
+ */
+public final class Transaction {
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    /**
+     * A unit of work run in a transaction that returns no value.
+     */
+    @FunctionalInterface
+    public interface Work {
+        void run() throws Exception;
+    }
+
+    /**
+     * Binds the parameters of one row of a batched statement.
+     */
+    @FunctionalInterface
+    public interface Binder {
+        void bind(PreparedStatement stmt) throws Exception;
+    }
+
+    /**
+     * Called once the batch holding a row has been executed.
+     */
+    @FunctionalInterface
+    public interface Completion {
+        /**
+         * @param generatedKeys the generated keys positioned on the key of the row, or null if no key was generated
+         */
+        void complete(ResultSet generatedKeys) throws Exception;
+    }
+
+    private final PooledConnection connection;
+    private final int shard;
+    private String batchKey;
+    private PreparedStatement batch;
+    private boolean batchReturnsKeys;
+    private final List<Completion> completions = new ArrayList<>();
+    private final List<Runnable> commitActions = new ArrayList<>();
+    private final List<Runnable> rollbackActions = new ArrayList<>();
+
+    /**
+     * @param connection the connection of the transaction
+     * @param shard      the index of the shard of the connection, or -1 for the primary
+     */
+    Transaction(PooledConnection connection, int shard) {
+        this.connection = connection;
+        this.shard = shard;
+    }
+
+    /**
+     * @return the index of the shard the transaction runs on, or -1 for the primary
+     */
+    int shard() {
+        return shard;
+    }
+
+    /**
+     * Queues one row of a write statement. The pending batch is flushed first if it holds another statement,
+     * then the row is bound immediately, so later changes to the written object are not sent.
+     *
+     * @param sql               the SQL of the write statement
+     * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS
+     * @param binder            binds the parameters of the row
+     * @param completion        called once the row is written, or null
+     * @throws SQLException if the pending batch cannot be flushed or the row cannot be bound
+     */
+    public void addBatch(String sql, int autoGeneratedKeys, Binder binder, Completion completion) throws SQLException {
+        String key = autoGeneratedKeys + ":" + sql;
+        if (batch != null && !batchKey.equals(key)) flush();
+        if (batch == null) {
+            batch = connection.getStatementCache().prepare(sql, autoGeneratedKeys, null);
+            batchKey = key;
+            batchReturnsKeys = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS;
+        }
+
+        try {
+            binder.bind(batch);
+            batch.addBatch();
+        } catch (SQLException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLException("Unable to bind the batched row", e);
+        }
+        completions.add(completion);
+        if (completions.size() >= MAX_BATCH_SIZE) flush();
+    }
+
+    /**
+     * Registers an action to run once the transaction is committed, such as evicting the rows it wrote from
+     * the caches, which a concurrent read could otherwise fill again with the rows as they were before the commit.
+     * The action is dropped if the transaction, or the savepoint it was registered in, is rolled back.
+     *
+     * @param action the action to run after the commit
+     */
+    public void afterCommit(Runnable action) {
+        commitActions.add(action);
+    }
+
+    /**
+     * Registers an action to run if the transaction, or the savepoint it was registered in, is rolled back,
+     * such as restoring the state of an object changed by a write that will not take place.
+     * The actions run in the reverse order of their registration.
+     *
+     * @param action the action undoing a change
+     */
+    public void onRollback(Runnable action) {
+        rollbackActions.add(action);
+    }
+
+    /**
+     * Sends the queued writes to the database and completes them, setting the generated ids back to saved models.
+     *
+     * @throws SQLException if the batch fails
+     */
+    public void flush() throws SQLException {
+        if (batch == null) return;
+        PreparedStatement stmt = batch;
+        List<Completion> done = new ArrayList<>(completions);
+        boolean returnsKeys = batchReturnsKeys;
+        batch = null;
+        batchKey = null;
+        completions.clear();
+
+        try {
+            stmt.executeBatch();
+            try (ResultSet keys = returnsKeys ? stmt.getGeneratedKeys() : null) {
+                for (Completion completion : done) {
+                    boolean hasKey = keys != null && keys.next();
+                    if (completion != null) completion.complete(hasKey ? keys : null);
+                }
+            }
+        } catch (SQLException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLException("Unable to complete the batched rows", e);
+        } finally {
+            stmt.close();
+        }
+    }
+
+    /**
+     * Flushes the queued writes and prepares a statement on the connection of the transaction.
+     * Closing the statement gives it back to the statement cache; the connection stays bound to the transaction.
+     */
+    PreparedStatement prepare(String sql) throws SQLException {
+        flush();
+        return connection.getStatementCache().prepare(sql, null);
+    }
+
+    PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        flush();
+        return connection.getStatementCache().prepare(sql, autoGeneratedKeys, null);
+    }
+
+    PreparedStatement prepare(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        flush();
+        return connection.getStatementCache().prepare(sql, resultSetType, resultSetConcurrency, null);
+    }
+
+    /**
+     * Flushes the queued writes and returns a handle on the connection of the transaction,
+     * whose close() leaves the connection bound to the transaction.
+     */
+    java.sql.Connection handle() throws SQLException {
+        flush();
+        return connection.handle(() -> { });
+    }
+
+    /**
+     * Runs the work of the outermost Connection.inTransaction() call, then commits and runs the commit actions,
+     * or rolls back and runs the rollback actions if the work fails.
+     */
+    <T> T run(Callable<T> work) throws Exception {
+        java.sql.Connection physical = connection.getConnection();
+        physical.setAutoCommit(false);
+        T result;
+        try {
+            result = work.call();
+            flush();
+            physical.commit();
+        } catch (Exception | Error e) {
+            discard();
+            try {
+                physical.rollback();
+            } catch (SQLException rollbackFailure) {
+                e.addSuppressed(rollbackFailure);
+            }
+            undo(0, 0);
+            throw e;
+        } finally {
+            try {
+                physical.setAutoCommit(true);
+            } catch (SQLException ignored) {
+                // The pool resets the connection when it is released.
+            }
+        }
+
+        rollbackActions.clear();
+        List<Runnable> actions = new ArrayList<>(commitActions);
+        commitActions.clear();
+        for (Runnable action : actions) {
+            action.run();
+        }
+        return result;
+    }
+
+    /**
+     * Runs the work of a nested Connection.inTransaction() call within a savepoint, which is rolled back
+     * along with the actions registered in it if the work fails, leaving the writes made before it in the transaction.
+     */
+    <T> T runNested(Callable<T> work) throws Exception {
+        flush();
+        java.sql.Connection physical = connection.getConnection();
+        Savepoint savepoint = physical.setSavepoint();
+        int committed = commitActions.size();
+        int undone = rollbackActions.size();
+        try {
+            return work.call();
+        } catch (Exception | Error e) {
+            discard();
+            try {
+                physical.rollback(savepoint);
+            } catch (SQLException rollbackFailure) {
+                e.addSuppressed(rollbackFailure);
+            }
+            undo(committed, undone);
+            throw e;
+        }
+    }
+
+    /**
+     * Drops the commit actions and runs the rollback actions registered since the given counts, the latest first.
+     *
+     * @param committed the number of commit actions to keep
+     * @param undone    the number of rollback actions to keep
+     */
+    private void undo(int committed, int undone) {
+        commitActions.subList(committed, commitActions.size()).clear();
+        List<Runnable> actions = rollbackActions.subList(undone, rollbackActions.size());
+        for (int i = actions.size() - 1; i >= 0; i--) {
+            actions.get(i).run();
+        }
+        actions.clear();
+    }
+
+    /**
+     * Drops the queued writes without sending them.
+     */
+    private void discard() {
+        if (batch == null) return;
+        try {
+            batch.close();
+        } catch (SQLException ignored) {
+            // The batch is dropped either way.
+        }
+        batch = null;
+        batchKey = null;
+        completions.clear();
+    }
+}
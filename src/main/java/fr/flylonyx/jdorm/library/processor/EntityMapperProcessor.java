@@ -0,0 +1,409 @@
+package fr.flylonyx.jdorm.library.processor;
+
+import fr.flylonyx.jdorm.library.annotations.Column;
+import fr.flylonyx.jdorm.library.annotations.Table;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Annotation processor generating a reflection-free EntityMapper for every class annotated with @Table.
+ * The mapper is written next to the model as "ModelNameMapper" and contains the model's SQL statements
+ * as constants, a typed ResultSet reader and a PreparedStatement binder.
+ * Private fields are accessed through their getters and setters, either written by hand or generated by Lombok.
+ * Models whose fields cannot be accessed this way are skipped and keep using reflection at runtime.
+ */
+@SupportedAnnotationTypes("fr.flylonyx.jdorm.library.annotations.Table")
+public class EntityMapperProcessor extends AbstractProcessor {
+    private static final String MAPPER_SUFFIX = "Mapper";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement type : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(Table.class))) {
+            if (type.getModifiers().contains(Modifier.ABSTRACT) || type.getModifiers().contains(Modifier.PRIVATE)) {
+                continue;
+            }
+            if (!isInstantiableFromPackage(type)) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                        "Not a top-level or static nested class, " + type.getSimpleName() + " will be mapped by reflection", type);
+                continue;
+            }
+            try {
+                List<MappedField> fields = collectFields(type);
+                if (fields != null) {
+                    writeMapper(type, fields);
+                }
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot write mapper: " + e.getMessage(), type);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Resolves how each @Column field of the model is read and written by the generated mapper.
+     *
+     * @param type the model class
+     * @return the mapped fields in declaration order, or null if a field cannot be accessed without reflection
+     */
+    private List<MappedField> collectFields(TypeElement type) {
+        if (!hasAccessibleNoArgConstructor(type)) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                    "No accessible no-argument constructor, " + type.getSimpleName() + " will be mapped by reflection", type);
+            return null;
+        }
+
+        List<MappedField> fields = new ArrayList<>();
+        boolean lombokGetters = hasAnnotation(type, "lombok.Getter", "lombok.Data", "lombok.Value");
+        boolean lombokSetters = hasAnnotation(type, "lombok.Setter", "lombok.Data");
+
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            Column column = field.getAnnotation(Column.class);
+            if (column == null) continue;
+
+            String name = field.getSimpleName().toString();
+            TypeMirror fieldType = field.asType();
+            String getter;
+            String setter;
+            if (!field.getModifiers().contains(Modifier.PRIVATE)) {
+                getter = name;
+                setter = null;
+            } else {
+                String getterName = getterName(name, fieldType);
+                String setterName = setterName(name, fieldType);
+                boolean hasGetter = hasMethod(type, getterName, 0) || lombokGetters || hasAnnotation(field, "lombok.Getter");
+                boolean hasSetter = hasMethod(type, setterName, 1) || lombokSetters || hasAnnotation(field, "lombok.Setter");
+                if (!hasGetter || !hasSetter) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                            "No accessors for field " + name + ", " + type.getSimpleName() + " will be mapped by reflection", field);
+                    return null;
+                }
+                getter = getterName + "()";
+                setter = setterName;
+            }
+            fields.add(new MappedField(column.name(), name, fieldType, getter, setter));
+        }
+
+        for (MappedField field : fields) {
+            if (field.fieldName.equals("id") && generatedIdExpression(field.type) == null) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                        "The id field cannot hold a generated key, " + type.getSimpleName() + " will be mapped by reflection", type);
+                return null;
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * A class nested in another one can only be created by the mapper, from the package, if it is static,
+     * and so are the classes enclosing it.
+     */
+    private boolean isInstantiableFromPackage(TypeElement type) {
+        for (Element element = type; element instanceof TypeElement; element = element.getEnclosingElement()) {
+            NestingKind nesting = ((TypeElement) element).getNestingKind();
+            if (nesting == NestingKind.TOP_LEVEL) return true;
+            if (nesting != NestingKind.MEMBER || !element.getModifiers().contains(Modifier.STATIC)
+                    || element.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the source file of the mapper for the given model.
+     *
+     * @param type the model class
+     * @param fields the mapped fields of the model
+     * @throws IOException if the source file cannot be created
+     */
+    private void writeMapper(TypeElement type, List<MappedField> fields) throws IOException {
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String modelName = modelName(type, packageName);
+        String mapperName = modelName.replace('.', '_') + MAPPER_SUFFIX;
+        String tableName = type.getAnnotation(Table.class).name();
+
+        MappedField id = fields.stream().filter(f -> f.fieldName.equals("id")).findFirst().orElse(null);
+        String columnList = fields.stream().map(f -> f.column).collect(Collectors.joining(", "));
+        String placeholders = fields.stream().map(f -> "?").collect(Collectors.joining(", "));
+        String insertSql = "INSERT INTO " + tableName + " (" + columnList + ") VALUES (" + placeholders + ")";
+        String updateSql = null;
+        String deleteSql = null;
+        String selectByIdSql = null;
+        if (id != null) {
+            String setClause = fields.stream().map(f -> f.column + " = ?").collect(Collectors.joining(", "));
+            updateSql = "UPDATE " + tableName + " SET " + setClause + " WHERE " + id.column + " = ?";
+            deleteSql = "DELETE FROM " + tableName + " WHERE " + id.column + " = ?";
+            selectByIdSql = "SELECT * FROM " + tableName + " WHERE " + id.column + " = ?";
+        }
+
+        String qualifiedName = packageName.isEmpty() ? mapperName : packageName + "." + mapperName;
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, type);
+        try (PrintWriter out = new PrintWriter(file.openWriter())) {
+            if (!packageName.isEmpty()) {
+                out.println("package " + packageName + ";");
+                out.println();
+            }
+            out.println("import fr.flylonyx.jdorm.library.core.EntityMapper;");
+            out.println();
+            out.println("import java.sql.PreparedStatement;");
+            out.println("import java.sql.ResultSet;");
+            out.println("import java.sql.SQLException;");
+            out.println();
+            out.println("/**");
+            out.println(" * Mapper of " + modelName + " generated by " + getClass().getSimpleName() + ", do not edit.");
+            out.println(" */");
+            out.println("public final class " + mapperName + " implements EntityMapper<" + modelName + "> {");
+            out.println("    public static final String TABLE_NAME = " + literal(tableName) + ";");
+            out.println("    public static final String INSERT_SQL = " + literal(insertSql) + ";");
+            out.println("    public static final String UPDATE_SQL = " + literal(updateSql) + ";");
+            out.println("    public static final String DELETE_SQL = " + literal(deleteSql) + ";");
+            out.println("    public static final String SELECT_BY_ID_SQL = " + literal(selectByIdSql) + ";");
+            out.println();
+            writeConstantGetter(out, "getTableName", "TABLE_NAME");
+            writeConstantGetter(out, "getInsertSql", "INSERT_SQL");
+            writeConstantGetter(out, "getUpdateSql", "UPDATE_SQL");
+            writeConstantGetter(out, "getDeleteSql", "DELETE_SQL");
+            writeConstantGetter(out, "getSelectByIdSql", "SELECT_BY_ID_SQL");
+
+            out.println("    @Override");
+            out.println("    public " + modelName + " read(ResultSet rs, int[] columnIndexes) throws SQLException {");
+            out.println("        " + modelName + " entity = new " + modelName + "();");
+            for (int i = 0; i < fields.size(); i++) {
+                MappedField field = fields.get(i);
+                String index = "columnIndexes[" + i + "]";
+                out.println("        if (" + index + " > 0) " + field.assign("entity", readExpression(field, index)) + ";");
+            }
+            out.println("        return entity;");
+            out.println("    }");
+            out.println();
+
+            out.println("    @Override");
+            out.println("    public int bind(PreparedStatement stmt, " + modelName + " entity, int index) throws SQLException {");
+            for (MappedField field : fields) {
+                out.println("        " + bindStatement(field, "index++") + ";");
+            }
+            out.println("        return index;");
+            out.println("    }");
+            out.println();
+
+            out.println("    @Override");
+            out.println("    public void bindId(PreparedStatement stmt, " + modelName + " entity, int index) throws SQLException {");
+            if (id != null) {
+                out.println("        " + bindStatement(id, "index") + ";");
+            } else {
+                out.println("        throw new SQLException(\"Model " + modelName + " must have an @Column id field\");");
+            }
+            out.println("    }");
+            out.println();
+
+            out.println("    @Override");
+            out.println("    public void setGeneratedId(" + modelName + " entity, int id) {");
+            if (id != null) {
+                out.println("        " + id.assign("entity", generatedIdExpression(id.type)) + ";");
+            }
+            out.println("    }");
+            out.println("}");
+        }
+    }
+
+    private void writeConstantGetter(PrintWriter out, String method, String constant) {
+        out.println("    @Override");
+        out.println("    public String " + method + "() {");
+        out.println("        return " + constant + ";");
+        out.println("    }");
+        out.println();
+    }
+
+    /**
+     * Builds the expression reading the column of the given field, at the given index expression,
+     * with the getter matching its declared type.
+     */
+    private String readExpression(MappedField field, String column) {
+        switch (field.type.getKind()) {
+            case INT: return "rs.getInt(" + column + ")";
+            case LONG: return "rs.getLong(" + column + ")";
+            case DOUBLE: return "rs.getDouble(" + column + ")";
+            case FLOAT: return "rs.getFloat(" + column + ")";
+            case BOOLEAN: return "rs.getBoolean(" + column + ")";
+            case SHORT: return "rs.getShort(" + column + ")";
+            case BYTE: return "rs.getByte(" + column + ")";
+            case ARRAY:
+                if (field.type.toString().equals("byte[]")) return "rs.getBytes(" + column + ")";
+                break;
+            case DECLARED:
+                if (field.type.toString().equals("java.lang.String")) return "rs.getString(" + column + ")";
+                break;
+            default:
+                break;
+        }
+        String erased = processingEnv.getTypeUtils().erasure(field.type).toString();
+        return "rs.getObject(" + column + ", " + erased + ".class)";
+    }
+
+    /**
+     * Builds the statement binding the value of the given field with the setter matching its declared type.
+     */
+    private String bindStatement(MappedField field, String index) {
+        String value = field.read("entity");
+        switch (field.type.getKind()) {
+            case INT: return "stmt.setInt(" + index + ", " + value + ")";
+            case LONG: return "stmt.setLong(" + index + ", " + value + ")";
+            case DOUBLE: return "stmt.setDouble(" + index + ", " + value + ")";
+            case FLOAT: return "stmt.setFloat(" + index + ", " + value + ")";
+            case BOOLEAN: return "stmt.setBoolean(" + index + ", " + value + ")";
+            case SHORT: return "stmt.setShort(" + index + ", " + value + ")";
+            case BYTE: return "stmt.setByte(" + index + ", " + value + ")";
+            default: return "stmt.setObject(" + index + ", " + value + ")";
+        }
+    }
+
+    /**
+     * Builds the expression converting the generated int key to the type of the id field, or null if it cannot hold it,
+     * in which case no mapper is generated for the model.
+     */
+    private String generatedIdExpression(TypeMirror type) {
+        switch (type.toString()) {
+            case "int":
+            case "java.lang.Integer":
+            case "java.lang.Number":
+            case "java.lang.Object":
+                return "id";
+            case "long":
+            case "java.lang.Long":
+                return "(long) id";
+            case "float":
+            case "java.lang.Float":
+                return "(float) id";
+            case "double":
+            case "java.lang.Double":
+                return "(double) id";
+            case "java.math.BigInteger":
+                return "java.math.BigInteger.valueOf(id)";
+            case "java.math.BigDecimal":
+                return "java.math.BigDecimal.valueOf(id)";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns the name of the model relative to its package, using dots for nested classes.
+     */
+    private String modelName(TypeElement type, String packageName) {
+        String qualified = type.getQualifiedName().toString();
+        return packageName.isEmpty() ? qualified : qualified.substring(packageName.length() + 1);
+    }
+
+    /**
+     * Returns the getter name Lombok and the JavaBeans convention use for the given field.
+     */
+    private String getterName(String field, TypeMirror type) {
+        if (type.getKind() == TypeKind.BOOLEAN) {
+            if (hasIsPrefix(field)) return field;
+            return "is" + capitalize(field);
+        }
+        return "get" + capitalize(field);
+    }
+
+    /**
+     * Returns the setter name Lombok and the JavaBeans convention use for the given field.
+     */
+    private String setterName(String field, TypeMirror type) {
+        if (type.getKind() == TypeKind.BOOLEAN && hasIsPrefix(field)) {
+            return "set" + field.substring(2);
+        }
+        return "set" + capitalize(field);
+    }
+
+    private boolean hasIsPrefix(String field) {
+        return field.length() > 2 && field.startsWith("is") && Character.isUpperCase(field.charAt(2));
+    }
+
+    private String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private boolean hasAccessibleNoArgConstructor(TypeElement type) {
+        List<ExecutableElement> constructors = ElementFilter.constructorsIn(type.getEnclosedElements());
+        if (constructors.isEmpty()) return true;
+        for (ExecutableElement constructor : constructors) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasMethod(TypeElement type, String name, int parameters) {
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            if (method.getSimpleName().contentEquals(name)
+                    && method.getParameters().size() == parameters
+                    && !method.getModifiers().contains(Modifier.PRIVATE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasAnnotation(Element element, String... annotationNames) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            String name = ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString();
+            for (String annotationName : annotationNames) {
+                if (name.equals(annotationName)) return true;
+            }
+        }
+        return false;
+    }
+
+    private String literal(String value) {
+        if (value == null) return "null";
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    /**
+     * A @Column field together with the expressions used to read and write it from the generated mapper.
+     */
+    private static final class MappedField {
+        private final String column;
+        private final String fieldName;
+        private final TypeMirror type;
+        private final String getter;
+        private final String setter;
+
+        private MappedField(String column, String fieldName, TypeMirror type, String getter, String setter) {
+            this.column = column;
+            this.fieldName = fieldName;
+            this.type = type;
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        private String read(String target) {
+            return target + "." + getter;
+        }
+
+        private String assign(String target, String value) {
+            return setter == null ? target + "." + fieldName + " = " + value : target + "." + setter + "(" + value + ")";
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package fr.flylonyx.jdorm.library.utils;
+
+/**
+ * How the rows of a sharded table are spread over the shards configured with Connection.configureShards(),
+ * based on the value of the shard key declared by @Table.
+ */
+public enum ShardStrategy {
+    /**
+     * The shard is the key modulo the number of shards for integer keys, and the hash code of the key's string
+     * form modulo the number of shards for other keys, so that consecutive keys are spread evenly.
+     */
+    HASH,
+
+    /**
+     * The shard is the first range whose exclusive upper bound, given by @Table(shardRanges), is above the key.
+     * The last shard holds the keys above every bound, so n shards take n - 1 ascending bounds.
+     */
+    RANGE;
+
+    /**
+     * Finds the shard holding the given key.
+     *
+     * @param key        the value of the shard key
+     * @param shardCount the number of shards
+     * @param ranges     the ascending exclusive upper bounds of the shards but the last, for RANGE
+     * @return the index of the shard, between 0 and shardCount - 1
+     * @throws IllegalArgumentException if the key is null, or not a number for RANGE
+     * @throws IllegalStateException if the number of ranges does not match the number of shards
+     */
+    public int shardOf(Object key, int shardCount, long[] ranges) {
+        if (key == null) throw new IllegalArgumentException("The shard key cannot be null");
+
+        if (this == HASH) {
+            if (key instanceof Number && !(key instanceof Float || key instanceof Double)) {
+                return (int) Math.floorMod(((Number) key).longValue(), (long) shardCount);
+            }
+            return Math.floorMod(key.toString().hashCode(), shardCount);
+        }
+
+        if (ranges.length != shardCount - 1) {
+            throw new IllegalStateException(shardCount + " shards need " + (shardCount - 1) + " range bounds, "
+                    + ranges.length + " declared");
+        }
+        if (!(key instanceof Number)) throw new IllegalArgumentException("A range shard key must be a number, got " + key);
+        long value = ((Number) key).longValue();
+        int shard = 0;
+        while (shard < ranges.length && value >= ranges[shard]) {
+            shard++;
+        }
+        return shard;
+    }
+}
@@ -0,0 +1,47 @@
+package fr.flylonyx.jdorm.library.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ColumnMappingTest {
+
+    @Test
+    void setWidensWrappersIntoPrimitiveFields() throws Exception {
+        EntityMetadata<WidePerson> metadata = EntityMetadata.of(WidePerson.class);
+        WidePerson person = new WidePerson();
+
+        metadata.getColumn("balance").set(person, 42);
+        assertEquals(42L, metadata.getColumn("balance").get(person));
+        metadata.getColumn("balance").set(person, (short) 7);
+        assertEquals(7L, metadata.getColumn("balance").get(person));
+        metadata.getColumn("salary").set(person, 3L);
+        assertEquals(3d, metadata.getColumn("salary").get(person));
+    }
+
+    @Test
+    void setStoresTheDefaultValueOfPrimitiveFieldsForNull() throws Exception {
+        EntityMetadata<WidePerson> metadata = EntityMetadata.of(WidePerson.class);
+        WidePerson person = new WidePerson();
+        metadata.getColumn("age").set(person, 30);
+        metadata.getColumn("is_active").set(person, true);
+
+        metadata.getColumn("age").set(person, null);
+        metadata.getColumn("is_active").set(person, null);
+
+        assertEquals(0, metadata.getColumn("age").get(person));
+        assertEquals(false, metadata.getColumn("is_active").get(person));
+    }
+
+    @Test
+    void setRejectsValuesThatCannotBeConverted() throws Exception {
+        EntityMetadata<WidePerson> metadata = EntityMetadata.of(WidePerson.class);
+        WidePerson person = new WidePerson();
+
+        assertThrows(IllegalArgumentException.class, () -> metadata.getColumn("age").set(person, 5L));
+        assertThrows(IllegalArgumentException.class, () -> metadata.getColumn("is_active").set(person, 1));
+        assertThrows(IllegalArgumentException.class, () -> metadata.getColumn("nickname").set(person, 5));
+        assertThrows(NullPointerException.class, () -> metadata.getColumn("age").set(null, 5));
+    }
+}
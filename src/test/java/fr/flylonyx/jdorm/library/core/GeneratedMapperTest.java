@@ -0,0 +1,64 @@
+package fr.flylonyx.jdorm.library.core;
+
+import fr.flylonyx.jdorm.library.annotations.Column;
+import fr.flylonyx.jdorm.library.annotations.Table;
+import org.junit.jupiter.api.Test;
+
+import java.sql.ResultSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Models of the tests are compiled with the JDORM annotation processor, see build.gradle.kts.
+ */
+class GeneratedMapperTest {
+
+    @Test
+    void hydratesAndSetsGeneratedKeysThroughTheGeneratedMapper() throws Exception {
+        EntityMetadata<MappedPerson> metadata = EntityMetadata.of(MappedPerson.class);
+        assertNotNull(metadata.getMapper());
+        assertEquals("INSERT INTO mapped_persons (id, name, age, is_active, rating) VALUES (?, ?, ?, ?, ?)",
+                metadata.getMapper().getInsertSql());
+
+        ResultSet rs = StubResultSet.of(new String[]{"id", "name", "age", "is_active", "rating"},
+                new Object[][]{{7L, "Ada", 36, true, null}});
+        rs.next();
+        MappedPerson person = metadata.hydrate(rs, metadata.columnIndexes(rs));
+
+        assertEquals(7L, person.id);
+        assertEquals("Ada", person.name);
+        assertEquals(36, person.age);
+        assertTrue(person.active);
+        assertNull(person.rating);
+
+        metadata.setGeneratedId(person, 42);
+        assertEquals(42L, person.id);
+    }
+
+    @Test
+    void leavesModelsTheMapperCannotHandleToReflection() throws Exception {
+        assertNull(EntityMetadata.of(InnerModel.class).getMapper());
+        assertNull(EntityMetadata.of(ShortIdModel.class).getMapper());
+    }
+
+    /**
+     * Inner class: a mapper in the package could not create it without an enclosing instance.
+     */
+    @Table(name = "inner_models")
+    class InnerModel extends Model {
+        @Column(name = "id")
+        int id;
+    }
+
+    /**
+     * The id field cannot hold the int key generated by the database.
+     */
+    @Table(name = "short_id_models")
+    static class ShortIdModel extends Model {
+        @Column(name = "id")
+        short id;
+    }
+}
@@ -0,0 +1,76 @@
+package fr.flylonyx.jdorm.library.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.sql.ResultSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Bytes allocated per row by EntityMetadata.hydrate(), measured with the allocation counter of the current thread
+ * while hydrating rows from a StubResultSet, which hands out the values it stores without allocating them.
+ */
+class HydrationAllocationTest {
+    private static final int ROWS = 50_000;
+    private static final int ROUNDS = 5;
+
+    /**
+     * Keeps the hydrated models reachable, so that the JIT does not scalar-replace their allocation.
+     */
+    private static volatile Object sink;
+
+    @Test
+    void hydrationDoesNotBoxPrimitiveColumns() throws Exception {
+        EntityMetadata<WidePerson> metadata = EntityMetadata.of(WidePerson.class);
+        // Integer.valueOf and Long.valueOf return cached boxes for small values only: boxing the int and long
+        // columns on the way would allocate more for the large values.
+        ResultSet small = StubResultSet.of(WidePerson.COLUMNS, rows(0));
+        ResultSet large = StubResultSet.of(WidePerson.COLUMNS, rows(1_000_000));
+
+        measure(metadata, small);
+        measure(metadata, large);
+        double smallBytes = measure(metadata, small);
+        double largeBytes = measure(metadata, large);
+
+        assertTrue(largeBytes - smallBytes < 4, "hydrate() allocates " + (largeBytes - smallBytes) + " more bytes per row for large values");
+    }
+
+    @Test
+    void snapshotOfHydratedModelMatchesItsFields() throws Exception {
+        EntityMetadata<WidePerson> metadata = EntityMetadata.of(WidePerson.class);
+        ResultSet rs = StubResultSet.of(WidePerson.COLUMNS, rows(1_000_000));
+        int[] indexes = metadata.columnIndexes(rs);
+
+        while (rs.next()) {
+            WidePerson person = metadata.hydrate(rs, indexes);
+            assertArrayEquals(metadata.snapshot(person), person.getSnapshot());
+        }
+    }
+
+    private static double measure(EntityMetadata<WidePerson> metadata, ResultSet rs) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        int[] indexes = metadata.columnIndexes(rs);
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int round = 0; round < ROUNDS; round++) {
+            rs.beforeFirst();
+            while (rs.next()) {
+                sink = metadata.hydrate(rs, indexes);
+            }
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        return (double) allocated / (ROWS * ROUNDS);
+    }
+
+    private static Object[][] rows(int base) {
+        Object[][] rows = new Object[ROWS][];
+        for (int i = 0; i < ROWS; i++) {
+            int value = base == 0 ? i % 100 : base + i;
+            rows[i] = WidePerson.row(value, value);
+        }
+        return rows;
+    }
+}
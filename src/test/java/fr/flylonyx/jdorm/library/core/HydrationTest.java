@@ -0,0 +1,66 @@
+package fr.flylonyx.jdorm.library.core;
+
+import fr.flylonyx.jdorm.library.annotations.Column;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HydrationTest {
+
+    @Test
+    void handlesHydrateTheSameRowsAsReflection() throws Exception {
+        ResultSet rs = StubResultSet.of(WidePerson.COLUMNS, rows(100));
+        EntityMetadata<WidePerson> metadata = EntityMetadata.of(WidePerson.class);
+
+        List<WidePerson> reflective = reflectiveHydrate(rs);
+        rs.beforeFirst();
+        List<WidePerson> hydrated = hydrate(metadata, rs);
+
+        assertEquals(reflective.size(), hydrated.size());
+        for (int i = 0; i < hydrated.size(); i++) {
+            assertArrayEquals(metadata.snapshot(reflective.get(i)), metadata.snapshot(hydrated.get(i)));
+        }
+    }
+
+    /**
+     * Hydrates the rows the way QueryBuilder used to, with Field.set(rs.getObject(name)) on a new instance.
+     */
+    static List<WidePerson> reflectiveHydrate(ResultSet rs) throws Exception {
+        List<WidePerson> results = new ArrayList<>();
+        while (rs.next()) {
+            WidePerson instance = WidePerson.class.getDeclaredConstructor().newInstance();
+            for (Field field : WidePerson.class.getDeclaredFields()) {
+                if (field.isAnnotationPresent(Column.class)) {
+                    Column column = field.getAnnotation(Column.class);
+                    field.setAccessible(true);
+                    field.set(instance, rs.getObject(column.name()));
+                }
+            }
+            results.add(instance);
+        }
+        return results;
+    }
+
+    static List<WidePerson> hydrate(EntityMetadata<WidePerson> metadata, ResultSet rs) throws Exception {
+        List<WidePerson> results = new ArrayList<>();
+        int[] indexes = metadata.columnIndexes(rs);
+        while (rs.next()) {
+            results.add(metadata.hydrate(rs, indexes));
+        }
+        return results;
+    }
+
+    static Object[][] rows(int count) {
+        Object[][] rows = new Object[count][];
+        for (int i = 0; i < count; i++) {
+            rows[i] = WidePerson.row(i + 1, i + 1);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,26 @@
+package fr.flylonyx.jdorm.library.core;
+
+import fr.flylonyx.jdorm.library.annotations.Column;
+import fr.flylonyx.jdorm.library.annotations.Table;
+
+/**
+ * Model whose fields the generated mapper can access, so that the annotation processor generates MappedPersonMapper
+ * when the tests are compiled.
+ */
+@Table(name = "mapped_persons")
+class MappedPerson extends Model {
+    @Column(name = "id")
+    long id;
+
+    @Column(name = "name")
+    String name;
+
+    @Column(name = "age")
+    int age;
+
+    @Column(name = "is_active")
+    boolean active;
+
+    @Column(name = "rating")
+    Double rating;
+}
@@ -0,0 +1,32 @@
+package fr.flylonyx.jdorm.library.core;
+
+import fr.flylonyx.jdorm.example.models.Person;
+import fr.flylonyx.jdorm.library.utils.Operations;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class QueryBuilderTest {
+
+    @Test
+    void writesRejectClausesMysqlDoesNotAccept() {
+        assertThrows(IllegalStateException.class, () -> new QueryBuilder<>(WidePerson.class).groupBy("age").delete());
+        assertThrows(IllegalStateException.class, () -> new QueryBuilder<>(WidePerson.class)
+                .groupBy("age").having("age", Operations.GREATER_THAN, 1).increment("balance", 1));
+        assertThrows(IllegalStateException.class, () -> new QueryBuilder<>(WidePerson.class).limit(5).offset(10).delete());
+        assertThrows(IllegalStateException.class, () -> new QueryBuilder<>(WidePerson.class)
+                .join("teams", "wide_persons.id", Operations.EQUALS, "teams.person_id").limit(5)
+                .update(Collections.<String, Object>singletonMap("age", 1)));
+        assertThrows(IllegalStateException.class, () -> new QueryBuilder<>(WidePerson.class)
+                .join("teams", "wide_persons.id", Operations.EQUALS, "teams.person_id").orderBy("age").delete());
+    }
+
+    @Test
+    void streamingRejectsEagerLoadedRelations() {
+        assertThrows(IllegalStateException.class, () -> new QueryBuilder<>(Person.class).with("addresses").stream());
+        assertThrows(IllegalStateException.class, () -> new QueryBuilder<>(Person.class).fetchJoin("addresses").forEach(person -> { }));
+        assertThrows(IllegalStateException.class, () -> new QueryBuilder<>(Person.class).with("addresses").publish());
+    }
+}
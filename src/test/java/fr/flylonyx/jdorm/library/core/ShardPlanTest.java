@@ -0,0 +1,189 @@
+package fr.flylonyx.jdorm.library.core;
+
+import fr.flylonyx.jdorm.library.database.Connection;
+import fr.flylonyx.jdorm.library.database.ShardScope;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ShardPlanTest {
+    private EntityMetadata<ShardedOrder> metadata;
+
+    @BeforeEach
+    void configureShards() throws Exception {
+        // Shard pools are only opened on the first statement, the hosts are never reached here.
+        Connection.configureShards("shard-0", "shard-1", "shard-2");
+        metadata = EntityMetadata.of(ShardedOrder.class);
+    }
+
+    @AfterEach
+    void removeShards() {
+        Connection.configureShards();
+    }
+
+    @Test
+    void mergeInterleavesShardsInOrderBeforeOffsetAndLimit() {
+        ShardPlan<ShardedOrder> plan = plan(Collections.singletonList("total"), 2, 3);
+
+        List<ShardedOrder> merged = plan.merge(Arrays.asList(
+                Arrays.asList(order(1, 10.0), order(4, 40.0), order(7, 70.0)),
+                Arrays.asList(order(2, 20.0), order(5, 50.0)),
+                Arrays.asList(order(3, 30.0), order(6, 60.0), order(8, 80.0))));
+
+        assertEquals(Arrays.asList(3, 4, 5), ids(merged));
+    }
+
+    @Test
+    void mergeFollowsDescendingAndSecondaryOrderings() {
+        ShardPlan<ShardedOrder> plan = plan(Arrays.asList("total DESC", "id"), 0, null);
+
+        List<ShardedOrder> merged = plan.merge(Arrays.asList(
+                Arrays.asList(order(2, 50.0), order(5, 20.0)),
+                Arrays.asList(order(1, 50.0), order(3, 40.0), order(6, null)),
+                Collections.<ShardedOrder>emptyList()));
+
+        assertEquals(Arrays.asList(1, 2, 3, 5, 6), ids(merged));
+    }
+
+    @Test
+    void mergeSortsNullsFirstAndStringsIgnoringCase() {
+        ShardPlan<ShardedOrder> byTotal = plan(Collections.singletonList("total ASC"), 0, null);
+        assertEquals(Arrays.asList(2, 1, 3), ids(byTotal.merge(Arrays.asList(
+                Arrays.asList(order(1, 5.0), order(3, 9.0)),
+                Collections.singletonList(order(2, null))))));
+
+        ShardPlan<ShardedOrder> byLabel = plan(Collections.singletonList("label"), 0, null);
+        assertEquals(Arrays.asList(1, 2, 3), ids(byLabel.merge(Arrays.asList(
+                Arrays.asList(new ShardedOrder(1, 0, "apple", null), new ShardedOrder(3, 0, "cherry", null)),
+                Collections.singletonList(new ShardedOrder(2, 0, "Banana", null))))));
+    }
+
+    @Test
+    void mergeConcatenatesUnorderedShards() {
+        ShardPlan<ShardedOrder> plan = plan(Collections.<String>emptyList(), 1, 3);
+
+        List<ShardedOrder> merged = plan.merge(Arrays.asList(
+                Arrays.asList(order(1, null), order(2, null)),
+                Collections.<ShardedOrder>emptyList(),
+                Arrays.asList(order(3, null), order(4, null), order(5, null))));
+
+        assertEquals(Arrays.asList(2, 3, 4), ids(merged));
+    }
+
+    @Test
+    void mergeStopsAtTheLimitOfTheQuery() {
+        ShardPlan<ShardedOrder> plan = plan(Collections.singletonList("total"), 0, 0);
+
+        assertEquals(Collections.emptyList(), plan.merge(Collections.singletonList(Collections.singletonList(order(1, 1.0)))));
+    }
+
+    @Test
+    void routeKeyedQueriesToTheShardsOfTheirKeys() {
+        ShardPlan<ShardedOrder> keyed = new ShardPlan<>(metadata, new int[]{1}, null);
+        assertArrayEquals(new int[]{1}, keyed.route(values("pending", 7L)));
+        assertArrayEquals(new int[]{0}, keyed.route(values("pending", null)));
+
+        ShardPlan<ShardedOrder> in = new ShardPlan<>(metadata, new int[]{0, 1, 2}, null);
+        assertArrayEquals(new int[]{0, 2}, in.route(values(3, 6L, 5)));
+    }
+
+    @Test
+    void routeConvertsKeysToTheTypeOfTheKeyField() throws Exception {
+        ShardPlan<ShardedOrder> keyed = new ShardPlan<>(metadata, new int[]{0}, null);
+
+        assertArrayEquals(keyed.route(values(7L)), keyed.route(values("7")));
+        assertArrayEquals(keyed.route(values(7L)), keyed.route(values(7)));
+        assertArrayEquals(keyed.route(values(7L)), keyed.route(values(new BigDecimal("7.00"))));
+        assertEquals(metadata.shardOfEntity(new ShardedOrder(1, 7, null, null)), keyed.route(values("7"))[0]);
+        assertThrows(IllegalArgumentException.class, () -> keyed.route(values("seven")));
+        assertThrows(IllegalArgumentException.class, () -> keyed.route(values(7.5)));
+    }
+
+    @Test
+    void routeScattersUnkeyedQueriesToEveryShard() {
+        ShardPlan<ShardedOrder> plan = new ShardPlan<>(metadata, null, null);
+
+        assertArrayEquals(new int[]{0, 1, 2}, plan.route(values()));
+    }
+
+    @Test
+    void routeRejectsScatteringUnsupportedQueries() {
+        ShardPlan<ShardedOrder> unsupported = new ShardPlan<>(metadata, null, "grouped queries are not merged");
+        assertThrows(IllegalStateException.class, () -> unsupported.route(values()));
+
+        ShardPlan<ShardedOrder> keyed = new ShardPlan<>(metadata, new int[]{0}, "grouped queries are not merged");
+        assertArrayEquals(new int[]{1}, keyed.route(values(4L)));
+
+        ShardPlan<ShardedOrder> unmergeable = plan(Collections.singletonList("LENGTH(label)"), 0, null);
+        assertThrows(IllegalStateException.class, () -> unmergeable.route(values()));
+    }
+
+    @Test
+    void routeLeavesQueriesOfBoundThreadsOnTheirShard() {
+        ShardPlan<ShardedOrder> plan = new ShardPlan<>(metadata, null, null);
+        ShardScope scope = Connection.useShard(2);
+        try {
+            assertNull(plan.route(values()));
+        } finally {
+            scope.close();
+        }
+
+        Connection.configureShards();
+        assertNull(plan.route(values()));
+    }
+
+    @Test
+    void sumAddsPartialsOfMixedTypes() {
+        assertEquals(7L, ShardPlan.sum(Arrays.asList(3, 4L, null)));
+        assertEquals(new BigDecimal("8.50"), ShardPlan.sum(Arrays.asList(3, new BigDecimal("5.50"))));
+        assertEquals(10.0, ShardPlan.sum(Arrays.asList(new BigDecimal("1.5"), 0.5, 8L)));
+        assertNull(ShardPlan.sum(Arrays.asList(null, null)));
+    }
+
+    @Test
+    void extremeKeepsTheSmallestOrGreatestPartial() {
+        assertEquals(4.5, ShardPlan.extreme(Arrays.asList(3, 4.5, new BigDecimal("4"), null), true));
+        assertEquals(3, ShardPlan.extreme(Arrays.asList(3, 4.5, new BigDecimal("4"), null), false));
+        assertNull(ShardPlan.extreme(Collections.singletonList(null), true));
+    }
+
+    @Test
+    void averageDividesTheTotalSumByTheTotalCount() {
+        assertEquals(new BigDecimal("3.750000"), ShardPlan.average(Arrays.asList(
+                new Object[]{new BigDecimal("10.00"), 3L}, new Object[]{new BigDecimal("5.00"), 1L}, new Object[]{null, 0L})));
+        assertEquals(new BigDecimal("50.1667"), ShardPlan.average(Arrays.asList(new Object[]{1003L, 10L}, new Object[]{502L, 20L})));
+        assertEquals(2.0, ShardPlan.average(Arrays.asList(new Object[]{1.5, 1L}, new Object[]{2.5, 1L})));
+        assertNull(ShardPlan.average(Collections.singletonList(new Object[]{null, 0L})));
+    }
+
+    private ShardPlan<ShardedOrder> plan(List<String> orderings, int offset, Integer limit) {
+        return new ShardPlan<>(metadata, null, null, "SELECT * FROM orders", orderings, "*", offset, limit);
+    }
+
+    private static ShardedOrder order(int id, Double total) {
+        return new ShardedOrder(id, id, "order " + id, total);
+    }
+
+    private static List<Integer> ids(List<ShardedOrder> orders) {
+        List<Integer> ids = new ArrayList<>();
+        for (ShardedOrder order : orders) {
+            ids.add(order.getId());
+        }
+        return ids;
+    }
+
+    private static List<Object> values(Object... values) {
+        return Arrays.asList(values);
+    }
+}
@@ -0,0 +1,36 @@
+package fr.flylonyx.jdorm.library.core;
+
+import fr.flylonyx.jdorm.library.annotations.Column;
+import fr.flylonyx.jdorm.library.annotations.Table;
+
+/**
+ * Model of a table sharded by customer, used by the routing and merging tests.
+ */
+@Table(name = "orders", shardKey = "customer_id")
+class ShardedOrder extends Model {
+    @Column(name = "id")
+    private int id;
+
+    @Column(name = "customer_id")
+    private long customerId;
+
+    @Column(name = "label")
+    private String label;
+
+    @Column(name = "total")
+    private Double total;
+
+    ShardedOrder() {
+    }
+
+    ShardedOrder(int id, long customerId, String label, Double total) {
+        this.id = id;
+        this.customerId = customerId;
+        this.label = label;
+        this.total = total;
+    }
+
+    int getId() {
+        return id;
+    }
+}
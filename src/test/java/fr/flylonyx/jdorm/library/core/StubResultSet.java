@@ -0,0 +1,96 @@
+package fr.flylonyx.jdorm.library.core;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * In-memory ResultSet over fixed rows, standing in for a driver result set in the hydration tests.
+ * Like the statements of StatementCache, it is a Proxy of the JDBC interface: only the cursor, findColumn,
+ * wasNull, the getters by index or label and getObject(int, Class) are implemented. Getters return the stored
+ * value itself when it already has the requested class, so that reading a row allocates nothing on the stub side
+ * but the arguments of the proxy call.
+ */
+final class StubResultSet {
+    private final String[] labels;
+    private final Object[][] rows;
+    private int row = -1;
+    private boolean wasNull;
+    private boolean closed;
+
+    private StubResultSet(String[] labels, Object[][] rows) {
+        this.labels = labels;
+        this.rows = rows;
+    }
+
+    /**
+     * @param labels the column labels, in column order
+     * @param rows   the values of each row, in column order
+     * @return a result set positioned before the first row, which beforeFirst() rewinds to read the rows again
+     */
+    static ResultSet of(String[] labels, Object[][] rows) {
+        StubResultSet stub = new StubResultSet(labels, rows);
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> stub.invoke(method, args));
+    }
+
+    private Object invoke(Method method, Object[] args) throws SQLException {
+        switch (method.getName()) {
+            case "next":
+                return ++row < rows.length;
+            case "beforeFirst":
+                row = -1;
+                return null;
+            case "findColumn":
+                return findColumn((String) args[0]);
+            case "wasNull":
+                return wasNull;
+            case "isClosed":
+                return closed;
+            case "close":
+                closed = true;
+                return null;
+            default:
+                break;
+        }
+        boolean typedObject = method.getName().equals("getObject") && args != null && args.length == 2 && args[1] instanceof Class;
+        if (!method.getName().startsWith("get") || args == null || (args.length != 1 && !typedObject)) {
+            throw new UnsupportedOperationException(method.getName());
+        }
+        int index = args[0] instanceof String ? findColumn((String) args[0]) : (Integer) args[0];
+        Object value = rows[row][index - 1];
+        if (typedObject) {
+            wasNull = value == null;
+            return ((Class<?>) args[1]).cast(value);
+        }
+        return convert(value, method.getReturnType());
+    }
+
+    private int findColumn(String label) throws SQLException {
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i].equalsIgnoreCase(label)) return i + 1;
+        }
+        throw new SQLException("Column '" + label + "' not found");
+    }
+
+    private Object convert(Object value, Class<?> type) {
+        wasNull = value == null;
+        if (type == Object.class || type == String.class && value instanceof String) return value;
+        if (type == String.class) return value == null ? null : value.toString();
+        if (type == BigDecimal.class) return value == null ? null : new BigDecimal(value.toString());
+        if (type == byte[].class) return value;
+        if (type == boolean.class) {
+            return value instanceof Boolean ? value : value != null && ((Number) value).intValue() != 0;
+        }
+        Number number = value instanceof Boolean ? (Number) ((Boolean) value ? 1 : 0) : (Number) value;
+        if (type == int.class) return number instanceof Integer ? number : number == null ? 0 : number.intValue();
+        if (type == long.class) return number instanceof Long ? number : number == null ? 0L : number.longValue();
+        if (type == double.class) return number instanceof Double ? number : number == null ? 0d : number.doubleValue();
+        if (type == float.class) return number instanceof Float ? number : number == null ? 0f : number.floatValue();
+        if (type == short.class) return number == null ? (short) 0 : number.shortValue();
+        if (type == byte.class) return number == null ? (byte) 0 : number.byteValue();
+        throw new UnsupportedOperationException("get" + type.getSimpleName());
+    }
+}
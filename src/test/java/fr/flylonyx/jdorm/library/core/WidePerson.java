@@ -0,0 +1,67 @@
+package fr.flylonyx.jdorm.library.core;
+
+import fr.flylonyx.jdorm.library.annotations.Column;
+import fr.flylonyx.jdorm.library.annotations.Table;
+
+/**
+ * Person-like model with a wide mix of primitive, boxed and object columns, hydrated by the tests from a
+ * StubResultSet.
+ */
+@Table(name = "wide_persons")
+class WidePerson extends Model {
+    static final String[] COLUMNS = {
+            "id", "first_name", "last_name", "email", "age", "is_active", "salary", "balance", "score", "rating",
+            "nickname", "created_at"
+    };
+
+    @Column(name = "id")
+    private int id;
+
+    @Column(name = "first_name")
+    private String firstName;
+
+    @Column(name = "last_name")
+    private String lastName;
+
+    @Column(name = "email")
+    private String email;
+
+    @Column(name = "age")
+    private int age;
+
+    @Column(name = "is_active")
+    private boolean isActive;
+
+    @Column(name = "salary")
+    private double salary;
+
+    @Column(name = "balance")
+    private long balance;
+
+    @Column(name = "score")
+    private float score;
+
+    @Column(name = "rating")
+    private Double rating;
+
+    @Column(name = "nickname")
+    private String nickname;
+
+    @Column(name = "created_at")
+    private String createdAt;
+
+    /**
+     * Builds the values of a row, in the order of COLUMNS, with the classes a driver returns for them.
+     *
+     * @param id   the id of the row
+     * @param base the value every numeric column is derived from
+     * @return the values of the row
+     */
+    static Object[] row(int id, int base) {
+        return new Object[]{
+                id, "First" + id, "Last" + id, "person" + id + "@example.com", base, id % 2 == 0, base * 1.5d,
+                (long) base * 1000, base / 4f, id % 3 == 0 ? null : base / 8d, id % 5 == 0 ? null : "nick" + id,
+                "2024-01-01 00:00:00"
+        };
+    }
+}
@@ -0,0 +1,76 @@
+package fr.flylonyx.jdorm.library.database;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TransactionTest {
+    private final List<String> events = new ArrayList<>();
+    private Transaction transaction;
+
+    @BeforeEach
+    void openTransaction() {
+        // Records the calls made on the physical connection, which never reaches a database.
+        java.sql.Connection physical = (java.sql.Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{java.sql.Connection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "commit":
+                        case "rollback":
+                            events.add(method.getName());
+                            return null;
+                        case "setSavepoint":
+                            return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Savepoint.class}, (p, m, a) -> null);
+                        default:
+                            return method.getReturnType() == boolean.class ? false : null;
+                    }
+                });
+        transaction = new Transaction(new PooledConnection(physical, 0), -1);
+    }
+
+    @Test
+    void commitRunsTheCommitActionsAfterTheCommit() throws Exception {
+        transaction.run(() -> {
+            transaction.afterCommit(() -> events.add("evict"));
+            transaction.onRollback(() -> events.add("restore"));
+            return null;
+        });
+
+        assertEquals(Arrays.asList("commit", "evict"), events);
+    }
+
+    @Test
+    void rollbackRunsTheRollbackActionsLatestFirst() {
+        assertThrows(IllegalStateException.class, () -> transaction.run(() -> {
+            transaction.afterCommit(() -> events.add("evict"));
+            transaction.onRollback(() -> events.add("restore first"));
+            transaction.onRollback(() -> events.add("restore second"));
+            throw new IllegalStateException("failed");
+        }));
+
+        assertEquals(Arrays.asList("rollback", "restore second", "restore first"), events);
+    }
+
+    @Test
+    void savepointRollbackOnlyUndoesTheActionsRegisteredInIt() throws Exception {
+        transaction.run(() -> {
+            transaction.afterCommit(() -> events.add("evict outer"));
+            transaction.onRollback(() -> events.add("restore outer"));
+            assertThrows(IllegalStateException.class, () -> transaction.runNested(() -> {
+                transaction.afterCommit(() -> events.add("evict nested"));
+                transaction.onRollback(() -> events.add("restore nested"));
+                throw new IllegalStateException("failed");
+            }));
+            return null;
+        });
+
+        assertEquals(Arrays.asList("rollback", "restore nested", "commit", "evict outer"), events);
+    }
+}
@@ -0,0 +1,61 @@
+package fr.flylonyx.jdorm.library.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ShardStrategyTest {
+    private static final long[] NO_RANGES = {};
+
+    @Test
+    void hashPlacesIntegerKeysByTheirValue() {
+        assertEquals(1, ShardStrategy.HASH.shardOf(7, 3, NO_RANGES));
+        assertEquals(1, ShardStrategy.HASH.shardOf(7L, 3, NO_RANGES));
+        assertEquals(1, ShardStrategy.HASH.shardOf((short) 7, 3, NO_RANGES));
+        assertEquals(2, ShardStrategy.HASH.shardOf(-1, 3, NO_RANGES));
+        assertEquals(0, ShardStrategy.HASH.shardOf(Long.MIN_VALUE, 2, NO_RANGES));
+    }
+
+    @Test
+    void hashPlacesOtherKeysByTheHashOfTheirString() {
+        assertEquals(Math.floorMod("abc".hashCode(), 3), ShardStrategy.HASH.shardOf("abc", 3, NO_RANGES));
+        assertEquals(Math.floorMod("2.5".hashCode(), 4), ShardStrategy.HASH.shardOf(2.5, 4, NO_RANGES));
+    }
+
+    @Test
+    void hashSpreadsConsecutiveKeysEvenly() {
+        int[] counts = new int[4];
+        for (int key = 0; key < 400; key++) {
+            counts[ShardStrategy.HASH.shardOf(key, 4, NO_RANGES)]++;
+        }
+        for (int count : counts) {
+            assertEquals(100, count);
+        }
+    }
+
+    @Test
+    void rangePlacesKeysBelowTheFirstExclusiveUpperBound() {
+        long[] ranges = {100, 200};
+        assertEquals(0, ShardStrategy.RANGE.shardOf(-5, 3, ranges));
+        assertEquals(0, ShardStrategy.RANGE.shardOf(99, 3, ranges));
+        assertEquals(1, ShardStrategy.RANGE.shardOf(100, 3, ranges));
+        assertEquals(1, ShardStrategy.RANGE.shardOf(199L, 3, ranges));
+        assertEquals(2, ShardStrategy.RANGE.shardOf(200, 3, ranges));
+        assertEquals(2, ShardStrategy.RANGE.shardOf(Long.MAX_VALUE, 3, ranges));
+        assertEquals(0, ShardStrategy.RANGE.shardOf(42, 1, NO_RANGES));
+    }
+
+    @Test
+    void rangeRejectsBoundsNotMatchingTheShards() {
+        assertThrows(IllegalStateException.class, () -> ShardStrategy.RANGE.shardOf(1, 3, new long[]{100}));
+        assertThrows(IllegalStateException.class, () -> ShardStrategy.RANGE.shardOf(1, 2, new long[]{100, 200}));
+    }
+
+    @Test
+    void rejectsKeysThatCannotBePlaced() {
+        assertThrows(IllegalArgumentException.class, () -> ShardStrategy.HASH.shardOf(null, 3, NO_RANGES));
+        assertThrows(IllegalArgumentException.class, () -> ShardStrategy.RANGE.shardOf(null, 2, new long[]{10}));
+        assertThrows(IllegalArgumentException.class, () -> ShardStrategy.RANGE.shardOf("abc", 2, new long[]{10}));
+    }
+}